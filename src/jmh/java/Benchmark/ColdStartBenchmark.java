@@ -0,0 +1,112 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import DAO.SegmentMessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Measures how long each store takes from closed to answering its first read: opening a copy of the H2 database file
+ * ("h2", which reads pages lazily) against opening SegmentMessageDAO ("segments", which replays every segment to
+ * build its indexes). Each invocation opens the store, reads one random message and closes it again, so the files are
+ * in the OS page cache after the first; drop the cache between invocations to see reads from disk as well.
+ *
+ *     mvn -Pjmh test -Djmh.args="ColdStartBenchmark -p messages=1000000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ColdStartBenchmark {
+    static final Path H2_COPY = Paths.get("target", "coldstart-h2");
+    static final Path SEGMENTS = Paths.get("target", "coldstart-segments");
+
+    @Param({ "h2", "segments" })
+    public String store;
+
+    @Param({ "10000", "100000" })
+    public int messages;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        Seed.seed(DaoBenchmark.ACCOUNTS, messages);
+        if (store.equals("segments")) {
+            Seed.seedSegments(SEGMENTS).close();
+        } else {
+            copyDatabase();
+        }
+    }
+
+    @Benchmark
+    public Message open() throws IOException, SQLException {
+        int id = 1 + ThreadLocalRandom.current().nextInt(messages);
+        if (store.equals("segments")) {
+            try (SegmentMessageDAO segments = new SegmentMessageDAO(SEGMENTS, SegmentMessageDAO.SEGMENT_BYTES,
+                    SegmentMessageDAO.SYNC_INTERVAL_MILLIS, 0, account -> true)) {
+                return segments.getMessageByID(id);
+            }
+        }
+        //the database is closed again when its last connection is
+        try (Connection connection = DriverManager.getConnection(
+                "jdbc:h2:./" + H2_COPY.resolve("db"), "sa", "sa");
+                PreparedStatement select = connection.prepareStatement(MessageDAO.SELECT_MESSAGE_BY_ID)) {
+            select.setInt(1, id);
+            try (ResultSet rows = select.executeQuery()) {
+                return rows.next() ? new Message(rows.getInt("message_id"), rows.getInt("posted_by"),
+                        rows.getString("message_text"), rows.getLong("time_posted_epoch")) : null;
+            }
+        }
+    }
+
+    /**
+     * Copy the seeded database, which the app's connection pool holds open, to H2_COPY with an online backup.
+     */
+    private static void copyDatabase() throws IOException, SQLException {
+        Files.createDirectories(H2_COPY);
+        Path backup = H2_COPY.resolve("backup.zip");
+        Connection connection = ConnectionUtil.getConnection();
+        Statement statement = null;
+        try {
+            statement = connection.createStatement();
+            statement.execute("backup to '" + backup + "'");
+        } finally {
+            ConnectionUtil.close(statement, connection);
+        }
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(backup))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                Files.copy(zip, H2_COPY.resolve(Paths.get(entry.getName()).getFileName()),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+}
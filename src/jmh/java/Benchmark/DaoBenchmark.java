@@ -0,0 +1,184 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.DatasetGenerator;
+
+/**
+ * Runs every AccountDAO and MessageDAO method against the H2 database, seeded with 100 accounts and, in turn, each
+ * of the message table sizes in the messages parameter, to show which queries get slower as the tables grow. Posts
+ * are skewed towards low account ids (see Seed), so picking accounts at random covers both busy and quiet ones.
+ *
+ * Lookups pick a random message or account each time. Benchmarks that add rows (insertMessage, insertMessages,
+ * insertAccount) have them removed after every iteration, and insertAndDeleteMessage deletes the message it adds, so
+ * the table sizes stay as seeded. This uses the same database file as the tests, which reset it before they run.
+ *
+ *     mvn -Pjmh test -Djmh.args="DaoBenchmark -prof gc"
+ *     mvn -Pjmh test -Djmh.args="DaoBenchmark.getMessageByID -p messages=1000000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBenchmark {
+    static final int ACCOUNTS = 100;
+    static final int PAGE_SIZE = 20;
+
+    @Param({ "1000", "10000", "100000" })
+    public int messages;
+
+    private final AccountDAO accountDAO = new AccountDAO();
+    private final MessageDAO messageDAO = new MessageDAO();
+    private List<Message> batch;
+    private List<Integer> accountIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Seed.seed(ACCOUNTS, messages);
+        batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            batch.add(new Message(1 + i % ACCOUNTS, "batched message " + i, 1669947792L + i));
+        }
+        accountIds = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            accountIds.add(1 + i * (ACCOUNTS / 10));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void trim() {
+        Seed.trim(ACCOUNTS, messages);
+    }
+
+    @Benchmark
+    public Message getMessageByID() {
+        return messageDAO.getMessageByID(randomMessageId());
+    }
+
+    @Benchmark
+    public List<Message> getAllMessages() {
+        return messageDAO.getAllMessages();
+    }
+
+    @Benchmark
+    public void streamAllMessages(Blackhole blackhole) throws IOException {
+        messageDAO.streamAllMessages(blackhole::consume);
+    }
+
+    @Benchmark
+    public List<Message> getMessagesByAccountID() {
+        return messageDAO.getMessagesByAccountID(randomAccountId());
+    }
+
+    @Benchmark
+    public void streamMessagesByAccountID(Blackhole blackhole) throws IOException {
+        messageDAO.streamMessagesByAccountID(randomAccountId(), blackhole::consume);
+    }
+
+    @Benchmark
+    public List<Message> getMessagesAfter() {
+        return messageDAO.getMessagesAfter(randomMessageId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Message> getMessagesByAccountIDAfter() {
+        return messageDAO.getMessagesByAccountIDAfter(randomAccountId(),
+                DatasetGenerator.START_EPOCH + Seed.SPAN_SECONDS / 2, 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Message> getRecentMessagesByAccountID() {
+        return messageDAO.getRecentMessagesByAccountID(randomAccountId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Message insertMessage() {
+        return messageDAO.insertMessage(new Message(randomAccountId(), "inserted message", 1669947792L));
+    }
+
+    @Benchmark
+    public List<Message> insertMessages() {
+        return messageDAO.insertMessages(batch, batch.size());
+    }
+
+    @Benchmark
+    public Message insertAndDeleteMessage() {
+        Message inserted = messageDAO.insertMessage(new Message(randomAccountId(), "inserted message", 1669947792L));
+        return messageDAO.deleteMessageByID(inserted.getMessage_id());
+    }
+
+    @Benchmark
+    public void updateMessage() {
+        int id = randomMessageId();
+        messageDAO.updateMessage(id, new Message(id, 1 + id % ACCOUNTS, "updated message", 1669947792L + id));
+    }
+
+    @Benchmark
+    public Message updateMessageText() {
+        return messageDAO.updateMessageText(randomMessageId(), "updated message");
+    }
+
+    @Benchmark
+    public Account getAccountByID() {
+        return accountDAO.getAccountByID(randomAccountId());
+    }
+
+    @Benchmark
+    public Account getAccountByLogin() {
+        return accountDAO.getAccountByLogin(Seed.username(randomAccountId()), Seed.PASSWORD);
+    }
+
+    @Benchmark
+    public List<Account> getAccountsByIDs() {
+        return accountDAO.getAccountsByIDs(accountIds);
+    }
+
+    @Benchmark
+    public List<Account> getAllAccounts() {
+        return accountDAO.getAllAccounts();
+    }
+
+    @Benchmark
+    public Account insertAccount() {
+        return accountDAO.insertAccount(new Account("new" + System.nanoTime(), Seed.PASSWORD));
+    }
+
+    @Benchmark
+    public void updateAccount() {
+        int id = randomAccountId();
+        accountDAO.updateAccount(id, new Account(id, Seed.username(id), Seed.PASSWORD));
+    }
+
+    private int randomMessageId() {
+        return 1 + ThreadLocalRandom.current().nextInt(messages);
+    }
+
+    private static int randomAccountId() {
+        return 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+    }
+}
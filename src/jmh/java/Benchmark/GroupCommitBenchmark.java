@@ -0,0 +1,76 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.GroupCommitMessageDAO;
+import DAO.MessageDAO;
+import DAO.MessageRepository;
+import Model.Message;
+import Util.DatasetGenerator;
+
+/**
+ * Inserts single messages from 8 threads at once, as the 8 write bulkhead threads do under load, each insert in a
+ * transaction of its own (maxRows 0) or grouped with the others into shared commits by GroupCommitMessageDAO.
+ *
+ *     mvn -Pjmh test -Djmh.args="GroupCommitBenchmark -p maxDelayMillis=0,2"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class GroupCommitBenchmark {
+    static final int MESSAGES = 10_000;
+
+    @Param({ "0", "8" })
+    public int maxRows;
+
+    @Param({ "2" })
+    public long maxDelayMillis;
+
+    private MessageRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Seed.seed(DaoBenchmark.ACCOUNTS, MESSAGES);
+        repository = maxRows == 0 ? new MessageDAO()
+                : new GroupCommitMessageDAO(new MessageDAO(), maxRows, maxDelayMillis);
+    }
+
+    @TearDown(Level.Iteration)
+    public void trim() {
+        Seed.trim(DaoBenchmark.ACCOUNTS, MESSAGES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (repository instanceof GroupCommitMessageDAO) {
+            ((GroupCommitMessageDAO) repository).close();
+        }
+    }
+
+    @Benchmark
+    public Message insertMessage() {
+        return repository.insertMessage(new Message(1 + ThreadLocalRandom.current().nextInt(DaoBenchmark.ACCOUNTS),
+                "inserted message", DatasetGenerator.START_EPOCH));
+    }
+}
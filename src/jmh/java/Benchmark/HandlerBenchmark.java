@@ -0,0 +1,125 @@
+package Benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import io.javalin.Javalin;
+
+/**
+ * Sends requests to the controller's handlers in-process, through a Jetty LocalConnector: each request is parsed,
+ * filtered, routed, handled and written out as it would be over the network, but without sockets, so the numbers show
+ * the cost of the app rather than of the loopback interface. Add -Dserver.asyncHandlers=true to jvmArgsAppend to
+ * include the hand-off to the bulkheads.
+ *
+ * The database is seeded as for DaoBenchmark, and messages added by postMessage are removed after every iteration.
+ * The write rate limit is left off, as it is by default, so that it does not turn writes into 429s.
+ *
+ *     mvn -Pjmh test -Djmh.args="HandlerBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandlerBenchmark {
+    @Param({ "1000", "100000" })
+    public int messages;
+
+    private Javalin app;
+    private LocalConnector connector;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Seed.seed(DaoBenchmark.ACCOUNTS, messages);
+        app = new SocialMediaController().startAPI();
+        app.start(0);
+        Server server = app.jettyServer().server();
+        connector = new LocalConnector(server);
+        server.addConnector(connector);
+        connector.start();
+
+        String response = connector.getResponse(get("/messages/1"));
+        if (!response.startsWith("HTTP/1.1 200")) {
+            throw new IllegalStateException("unexpected response to GET /messages/1:\n" + response);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void trim() {
+        Seed.trim(DaoBenchmark.ACCOUNTS, messages);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        app.stop();
+    }
+
+    @Benchmark
+    public String getMessageByID() throws Exception {
+        return connector.getResponse(get("/messages/" + randomMessageId()));
+    }
+
+    @Benchmark
+    public String getMessagesPage() throws Exception {
+        return connector.getResponse(get("/messages?limit=" + DaoBenchmark.PAGE_SIZE));
+    }
+
+    @Benchmark
+    public String getAccountMessagesPage() throws Exception {
+        return connector.getResponse(get("/accounts/" + randomAccountId() + "/messages?limit="
+                + DaoBenchmark.PAGE_SIZE));
+    }
+
+    @Benchmark
+    public String login() throws Exception {
+        return connector.getResponse(send("POST", "/login", "{\"username\":\"" + Seed.username(randomAccountId())
+                + "\",\"password\":\"" + Seed.PASSWORD + "\"}"));
+    }
+
+    @Benchmark
+    public String postMessage() throws Exception {
+        return connector.getResponse(send("POST", "/messages", "{\"posted_by\":" + randomAccountId()
+                + ",\"message_text\":\"hello message\",\"time_posted_epoch\":1669947792}"));
+    }
+
+    @Benchmark
+    public String updateMessageText() throws Exception {
+        return connector.getResponse(send("PATCH", "/messages/" + randomMessageId(),
+                "{\"message_text\":\"updated message\"}"));
+    }
+
+    private static String get(String path) {
+        return "GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n";
+    }
+
+    private static String send(String method, String path, String body) {
+        return method + " " + path + " HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\n"
+                + "Content-Length: " + body.length() + "\r\n\r\n" + body;
+    }
+
+    private int randomMessageId() {
+        return 1 + ThreadLocalRandom.current().nextInt(messages);
+    }
+
+    private static int randomAccountId() {
+        return 1 + ThreadLocalRandom.current().nextInt(DaoBenchmark.ACCOUNTS);
+    }
+}
@@ -0,0 +1,114 @@
+package Benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Account;
+import Model.Message;
+import Util.Json;
+
+/**
+ * Compares the controller's old JSON handling, a new ObjectMapper per request reading the body as a String and
+ * serializing the response to a String, with the shared readers and writers in Util.Json that read the request
+ * stream and serialize the response straight to bytes.
+ *
+ * Each pair of benchmarks does the work of one request: postMessage reads a message and writes it back, as
+ * POST /messages does, postAccount reads an account and writes it back, as POST /register and POST /login do, and
+ * getMessages writes a list of 100 messages, as GET /messages does. Run with -prof gc to
+ * see the bytes allocated per request:
+ *
+ *     mvn -Pjmh test -Djmh.args="JsonBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+    private byte[] requestBody;
+    private byte[] accountRequestBody;
+    private Message message;
+    private List<Message> messages;
+
+    @Setup
+    public void setUp() {
+        requestBody = "{\"posted_by\":1,\"message_text\":\"hello message\",\"time_posted_epoch\":1669947792}"
+                .getBytes(StandardCharsets.UTF_8);
+        accountRequestBody = "{\"username\":\"testuser1\",\"password\":\"password\"}"
+                .getBytes(StandardCharsets.UTF_8);
+        message = new Message(1, 1, "hello message", 1669947792);
+        messages = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            messages.add(new Message(i, 1 + i % 10, "test message " + i, 1669947792L + i));
+        }
+    }
+
+    @Benchmark
+    public byte[] postMessagePerRequestMapper() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Message read = mapper.readValue(new String(requestBody, StandardCharsets.UTF_8), Message.class);
+        return mapper.writeValueAsString(new Message(1, read.getPosted_by(), read.getMessage_text(),
+                read.getTime_posted_epoch())).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] postMessageSharedReaderWriter() throws IOException {
+        Message read = Json.MESSAGE_READER.readValue(new ByteArrayInputStream(requestBody));
+        return Json.MESSAGE_WRITER.writeValueAsBytes(new Message(1, read.getPosted_by(), read.getMessage_text(),
+                read.getTime_posted_epoch()));
+    }
+
+    @Benchmark
+    public byte[] postAccountPerRequestMapper() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Account read = mapper.readValue(new String(accountRequestBody, StandardCharsets.UTF_8), Account.class);
+        return mapper.writeValueAsString(new Account(1, read.getUsername(), read.getPassword()))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] postAccountSharedReaderWriter() throws IOException {
+        Account read = Json.ACCOUNT_READER.readValue(new ByteArrayInputStream(accountRequestBody));
+        return Json.ACCOUNT_WRITER.writeValueAsBytes(new Account(1, read.getUsername(), read.getPassword()));
+    }
+
+    @Benchmark
+    public byte[] getMessagesPerRequestMapper() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        return mapper.writeValueAsString(messages).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] getMessagesSharedWriter() throws IOException {
+        return Json.MESSAGE_LIST_WRITER.writeValueAsBytes(messages);
+    }
+
+    @Benchmark
+    public byte[] getMessagePerRequestMapper() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        return mapper.writeValueAsString(message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] getMessageSharedWriter() throws IOException {
+        return Json.MESSAGE_WRITER.writeValueAsBytes(message);
+    }
+}
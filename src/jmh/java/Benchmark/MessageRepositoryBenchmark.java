@@ -0,0 +1,131 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.ColumnarMessageDAO;
+import DAO.MessageDAO;
+import DAO.MessageRepository;
+import DAO.SegmentMessageDAO;
+import Model.Message;
+import Util.DatasetGenerator;
+
+/**
+ * Compares the message stores MessageService can run on: MessageDAO, reading from H2 ("h2"), ColumnarMessageDAO,
+ * reading from columns in memory ("memory"), and SegmentMessageDAO, keeping messages in its own memory-mapped log
+ * ("segments", copied from H2 into target/segments-benchmark), on the same seeded data set. Writes go to H2 in the
+ * first two, so updateMessageText and insertMessage show what the memory store adds to a write and how appending to
+ * the log compares. Messages inserted into the segments are not trimmed between iterations. ColdStartBenchmark
+ * compares how long the stores take to open.
+ *
+ *     mvn -Pjmh test -Djmh.args="MessageRepositoryBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageRepositoryBenchmark {
+    @Param({ "h2", "memory", "segments" })
+    public String store;
+
+    @Param({ "10000", "100000" })
+    public int messages;
+
+    private MessageRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Seed.seed(DaoBenchmark.ACCOUNTS, messages);
+        switch (store) {
+            case "memory":
+                repository = new ColumnarMessageDAO(new MessageDAO());
+                break;
+            case "segments":
+                repository = Seed.seedSegments(Paths.get("target", "segments-benchmark"));
+                break;
+            default:
+                repository = new MessageDAO();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (repository instanceof SegmentMessageDAO) {
+            ((SegmentMessageDAO) repository).close();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void trim() {
+        Seed.trim(DaoBenchmark.ACCOUNTS, messages);
+    }
+
+    @Benchmark
+    public Message getMessageByID() {
+        return repository.getMessageByID(randomMessageId());
+    }
+
+    @Benchmark
+    public List<Message> getMessagesAfter() {
+        return repository.getMessagesAfter(randomMessageId(), DaoBenchmark.PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Message> getMessagesByAccountID() {
+        return repository.getMessagesByAccountID(randomAccountId());
+    }
+
+    @Benchmark
+    public List<Message> getMessagesByAccountIDAfter() {
+        return repository.getMessagesByAccountIDAfter(randomAccountId(),
+                DatasetGenerator.START_EPOCH + Seed.SPAN_SECONDS / 2, 0, DaoBenchmark.PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Message> getRecentMessagesByAccountID() {
+        return repository.getRecentMessagesByAccountID(randomAccountId(), DaoBenchmark.PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Message> getAllMessages() {
+        return repository.getAllMessages();
+    }
+
+    @Benchmark
+    public Message updateMessageText() {
+        return repository.updateMessageText(randomMessageId(), "updated message");
+    }
+
+    @Benchmark
+    public Message insertMessage() {
+        return repository.insertMessage(
+                new Message(randomAccountId(), "inserted message", DatasetGenerator.START_EPOCH));
+    }
+
+    private int randomMessageId() {
+        return 1 + ThreadLocalRandom.current().nextInt(messages);
+    }
+
+    private static int randomAccountId() {
+        return 1 + ThreadLocalRandom.current().nextInt(DaoBenchmark.ACCOUNTS);
+    }
+}
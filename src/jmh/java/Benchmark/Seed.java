@@ -0,0 +1,102 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import DAO.SegmentMessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.DatasetGenerator;
+
+/**
+ * Fills the database the app runs against for the benchmarks, with a DatasetGenerator data set of the given size:
+ * messages spread over the accounts by Zipf's law, so account 1 posts the most, over a year.
+ *
+ * Rows added by a benchmark can be dropped again with trim(), so every iteration sees the same table sizes.
+ */
+class Seed {
+    static final String PASSWORD = DatasetGenerator.PASSWORD;
+    static final double ZIPF_EXPONENT = 1.0;
+    static final long SPAN_SECONDS = 365L * 24 * 60 * 60;
+    static final long RANDOM_SEED = 42;
+
+    private Seed() {
+    }
+
+    /**
+     * Reset the database and add rows until there are accounts accounts and messages messages.
+     */
+    static void seed(int accounts, int messages) {
+        try {
+            new DatasetGenerator(accounts, messages, ZIPF_EXPONENT, SPAN_SECONDS, RANDOM_SEED).populate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("could not seed the database", e);
+        }
+    }
+
+    /**
+     * Delete every account and message added since seed().
+     */
+    static void trim(int accounts, int messages) {
+        Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement deleteMessages = null;
+        PreparedStatement deleteAccounts = null;
+        try {
+            deleteMessages = connection.prepareStatement("delete from message where message_id > ? or posted_by > ?");
+            deleteMessages.setInt(1, messages);
+            deleteMessages.setInt(2, accounts);
+            deleteMessages.executeUpdate();
+            deleteAccounts = connection.prepareStatement("delete from account where account_id > ?");
+            deleteAccounts.setInt(1, accounts);
+            deleteAccounts.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            ConnectionUtil.close(deleteAccounts, deleteMessages, connection);
+        }
+    }
+
+    /**
+     * Replace whatever is in directory with segment files holding the messages now in the database, with the same
+     * message IDs.
+     *
+     * @return the SegmentMessageDAO the messages were copied into, still open, checking posted_by in the database
+     */
+    static SegmentMessageDAO seedSegments(Path directory) {
+        try {
+            if (Files.exists(directory)) {
+                try (Stream<Path> files = Files.walk(directory)) {
+                    for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                        Files.delete(file);
+                    }
+                }
+            }
+            AccountDAO accountDAO = new AccountDAO();
+            SegmentMessageDAO segments = new SegmentMessageDAO(directory, SegmentMessageDAO.SEGMENT_BYTES,
+                    SegmentMessageDAO.SYNC_INTERVAL_MILLIS, SegmentMessageDAO.COMPACTION_INTERVAL_MILLIS,
+                    id -> accountDAO.getAccountByID(id) != null);
+            MessageDAO messageDAO = new MessageDAO();
+            List<Message> page = messageDAO.getMessagesAfter(0, 10_000);
+            while (!page.isEmpty()) {
+                segments.insertMessages(page, page.size());
+                page = messageDAO.getMessagesAfter(page.get(page.size() - 1).getMessage_id(), 10_000);
+            }
+            return segments;
+        } catch (IOException e) {
+            throw new IllegalStateException("could not seed the segments", e);
+        }
+    }
+
+    static String username(int accountId) {
+        return DatasetGenerator.username(accountId);
+    }
+}
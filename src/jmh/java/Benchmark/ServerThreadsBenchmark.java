@@ -0,0 +1,149 @@
+package Benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.VirtualThreads;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Compares the throughput and latency of the app when requests run on the bounded pool of platform threads and when
+ * each runs on its own virtual thread, with 1k to 10k connections each sending requests back to back.
+ *
+ * This is not a JMH benchmark, as JMH has no notion of thousands of concurrent connections, so it is run through the
+ * jmh profile with its own main class. Virtual threads need Java 21, which can be picked with jmh.java:
+ *
+ *     mvn -Pjmh test -Djmh.main=Benchmark.ServerThreadsBenchmark -Djmh.java=/path/to/jdk-21/bin/java
+ *         -Djmh.args="1000,5000,10000 20 /messages"
+ *
+ * The arguments are the connection counts to try, the seconds to measure each for, and the path to GET. The
+ * default path lists every message, so every request does blocking JDBC. Each connection waits for its response
+ * before sending the next request, so latency is only comparable between runs with the same number of connections.
+ * Async handlers are always off, so that requests run on the threads being compared rather than on the bulkheads.
+ */
+public class ServerThreadsBenchmark {
+    private static final int PORT = 8080;
+    private static final long WARMUP_SECONDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> connectionCounts = new ArrayList<>();
+        for (String count : (args.length > 0 ? args[0] : "1000,5000,10000").split(",")) {
+            connectionCounts.add(Integer.parseInt(count.trim()));
+        }
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 20;
+        String path = args.length > 2 ? args[2] : "/messages";
+
+        List<Boolean> modes = new ArrayList<>(List.of(false));
+        if (VirtualThreads.areSupported()) {
+            modes.add(true);
+        } else {
+            System.out.println("Java " + System.getProperty("java.version")
+                    + " has no virtual threads, only the platform thread pool is measured");
+        }
+
+        ConnectionUtil.resetTestDatabase();
+        System.out.printf("%-10s %12s %12s %10s %10s %10s %8s%n",
+                "threads", "connections", "requests/s", "p50 ms", "p99 ms", "max ms", "errors");
+        for (boolean virtualThreads : modes) {
+            for (int connections : connectionCounts) {
+                Javalin app = new SocialMediaController().startAPI(virtualThreads, false).start(PORT);
+                try {
+                    run(connections, WARMUP_SECONDS, path);
+                    Result result = run(connections, seconds, path);
+                    System.out.printf("%-10s %12d %12.0f %10.2f %10.2f %10.2f %8d%n",
+                            virtualThreads ? "virtual" : "platform", connections,
+                            result.latencies.length / (double) seconds,
+                            millis(result.percentile(0.50)), millis(result.percentile(0.99)),
+                            millis(result.percentile(1.0)), result.errors);
+                } finally {
+                    app.stop();
+                }
+            }
+        }
+    }
+
+    /**
+     * Keep connections requests in flight for the given number of seconds.
+     */
+    private static Result run(int connections, long seconds, String path) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(executor)
+                .build();
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + PORT + path))
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong errors = new AtomicLong();
+
+        List<CompletableFuture<List<Long>>> loops = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            CompletableFuture<List<Long>> loop = new CompletableFuture<>();
+            send(client, request, deadline, errors, new ArrayList<>(), loop);
+            loops.add(loop);
+        }
+        List<Long> latencies = new ArrayList<>();
+        for (CompletableFuture<List<Long>> loop : loops) {
+            latencies.addAll(loop.get());
+        }
+        executor.shutdownNow();
+        return new Result(latencies, errors.get());
+    }
+
+    /**
+     * Send request, then send it again as soon as the response arrives, until deadline, when done is completed with
+     * the latencies of the successful requests.
+     */
+    private static void send(HttpClient client, HttpRequest request, long deadline, AtomicLong errors,
+                             List<Long> latencies, CompletableFuture<List<Long>> done) {
+        long start = System.nanoTime();
+        if (start >= deadline) {
+            done.complete(latencies);
+            return;
+        }
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, failure) -> {
+                    if (failure != null || response.statusCode() != 200) {
+                        errors.incrementAndGet();
+                    } else {
+                        latencies.add(System.nanoTime() - start);
+                    }
+                    send(client, request, deadline, errors, latencies, done);
+                });
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static final class Result {
+        final long[] latencies;
+        final long errors;
+
+        Result(List<Long> latencies, long errors) {
+            this.latencies = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            this.errors = errors;
+        }
+
+        long percentile(double p) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            return latencies[(int) Math.ceil(p * latencies.length) - (p > 0 ? 1 : 0)];
+        }
+    }
+}
@@ -1,23 +1,57 @@
 package Controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 //import DAO.MessageDAO;
+import DAO.GroupCommitMessageDAO;
+import DAO.MessageSink;
 import Model.Account;
 import Model.Message;
+import Model.MessagePage;
 import Service.AccountService;
 import Service.MessageService;
+import Util.Bulkhead;
+import Util.Cache;
+import Util.CompressionFilter;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.Cursor;
+import Util.Histogram;
+import Util.Json;
+import Util.PrometheusText;
+import Util.QueryMetrics;
+import Util.RateLimiter;
+import Util.RouteMetrics;
+import Util.SingleFlight;
 
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpTester;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import io.javalin.Javalin;
+import io.javalin.event.HandlerMetaInfo;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
+import jakarta.servlet.DispatcherType;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * DONE: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
@@ -25,32 +59,247 @@ import java.util.List;
  * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
  */
 public class SocialMediaController {
+/**
+ * Page size used when a list endpoint is asked for a page without a limit.
+ */
+static final int DEFAULT_PAGE_LIMIT = Integer.getInteger("pagination.defaultLimit", 100);
+/**
+ * Largest page a client may ask for; larger limits are clamped to this.
+ */
+static final int MAX_PAGE_LIMIT = Integer.getInteger("pagination.maxLimit", 1000);
+/**
+ * Response header carrying the cursor for the next page of a paginated list.
+ */
+static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+/**
+ * Most messages accepted by one POST /messages/bulk request.
+ */
+static final int MAX_BULK_MESSAGES = Integer.getInteger("bulk.maxMessages", 10_000);
+/**
+ * Content type of newline-delimited JSON, one message per line.
+ */
+static final String NDJSON = "application/x-ndjson";
+/**
+ * Smallest response body, in bytes, that is compressed for clients that accept it.
+ */
+static final int COMPRESSION_MIN_SIZE = Integer.getInteger("compression.minSize", 1024);
+/**
+ * Deflate level used to compress responses, from 1 (fastest) to 9 (smallest).
+ */
+static final int COMPRESSION_LEVEL = Integer.getInteger("compression.level", 6);
+/**
+ * Run each request on its own virtual thread instead of on the pool of platform threads. Needs Java 21 or later.
+ */
+static final boolean VIRTUAL_THREADS = Boolean.getBoolean("server.virtualThreads");
+/**
+ * Most platform threads serving requests when virtual threads are off.
+ */
+static final int SERVER_MAX_THREADS = Integer.getInteger("server.maxThreads", 250);
+/**
+ * Fewest platform threads kept alive to serve requests.
+ */
+static final int SERVER_MIN_THREADS = Integer.getInteger("server.minThreads", 8);
+/**
+ * Run handlers on the read, write and scan bulkheads below instead of on the thread serving the request. Off by
+ * default; with virtual threads on as well, each virtual thread only hands its request to a bulkhead, so the bulkheads
+ * rather than the virtual threads bound how many requests run at once.
+ */
+static final boolean ASYNC_HANDLERS = Boolean.getBoolean("server.asyncHandlers");
+/**
+ * Threads for lookups of a single message or account's messages, and logins.
+ */
+static final int READ_THREADS = Integer.getInteger("bulkhead.read.threads", 16);
+/**
+ * Lookups waiting for a read thread before further lookups are turned away with a 503.
+ */
+static final int READ_QUEUE_DEPTH = Integer.getInteger("bulkhead.read.queueDepth", 1000);
+/**
+ * Threads for registrations and for creating, updating and deleting messages.
+ */
+static final int WRITE_THREADS = Integer.getInteger("bulkhead.write.threads", 8);
+/**
+ * Writes waiting for a write thread before further writes are turned away with a 503.
+ */
+static final int WRITE_QUEUE_DEPTH = Integer.getInteger("bulkhead.write.queueDepth", 1000);
+/**
+ * Threads for listing every message.
+ */
+static final int SCAN_THREADS = Integer.getInteger("bulkhead.scan.threads", 2);
+/**
+ * Listings waiting for a scan thread before further listings are turned away with a 503.
+ */
+static final int SCAN_QUEUE_DEPTH = Integer.getInteger("bulkhead.scan.queueDepth", 50);
+/**
+ * Seconds a client turned away by a full bulkhead is asked to wait before retrying.
+ */
+static final int BULKHEAD_RETRY_AFTER_SECONDS = Integer.getInteger("bulkhead.retryAfterSeconds", 1);
+/**
+ * Messages each account may post or update per second, on average; 0 (the default) turns the limit off.
+ */
+static final int WRITE_RATE_PER_SECOND = Integer.getInteger("ratelimit.messages.ratePerSecond", 0);
+/**
+ * Messages an account may post or update at once after a quiet spell.
+ */
+static final int WRITE_RATE_BURST = Integer.getInteger("ratelimit.messages.burst", 20);
+/**
+ * How long an account must stay quiet before its rate limit state is dropped.
+ */
+static final long WRITE_RATE_IDLE_MILLIS = Long.getLong("ratelimit.messages.idleMillis", 60_000);
+/**
+ * Request attribute holding the System.nanoTime() at which the request reached the app.
+ */
+static final String REQUEST_START = "metrics.requestStart";
+/**
+ * Latency percentiles reported by GET /metrics.
+ */
+static final double[] LATENCY_QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
 AccountService accountService;
 MessageService messageService;
+CompressionFilter compressionFilter;
+Bulkhead readBulkhead;
+Bulkhead writeBulkhead;
+Bulkhead scanBulkhead;
+RateLimiter writeRateLimiter;
+boolean asyncHandlers;
+/**
+ * Request metrics of each route, by path and then by HandlerType ordinal, filled in as routes are added.
+ */
+Map<String, RouteMetrics[]> routeMetrics = new ConcurrentHashMap<>();
+List<RouteMetrics> routeMetricsList = new CopyOnWriteArrayList<>();
+RouteMetrics unmatchedRouteMetrics = new RouteMetrics("*", "unmatched");
 
 public SocialMediaController(){
+    this(WRITE_RATE_PER_SECOND);
+}
+
+/**
+ * @param writeRatePerSecond messages each account may post or update per second; 0 turns the limit off
+ */
+public SocialMediaController(int writeRatePerSecond){
     accountService = new AccountService();
     messageService = new MessageService();
+    if (writeRatePerSecond > 0) {
+        writeRateLimiter = new RateLimiter(writeRatePerSecond, WRITE_RATE_BURST, WRITE_RATE_IDLE_MILLIS);
+    }
 }
 
+    /**
+     * @return the byte and time counts of the response compression done by the app started by startAPI()
+     */
+    public CompressionFilter.Stats getCompressionStats() {
+        return compressionFilter.getStats();
+    }
+
+    /**
+     * @return counts of the message writes allowed and refused by the per-account rate limit, or null if it is off
+     */
+    public RateLimiter.Stats getWriteRateLimiterStats() {
+        return writeRateLimiter != null ? writeRateLimiter.getStats() : null;
+    }
+
+    /**
+     * @return how busy the read, write and scan bulkheads of the app started by startAPI() are
+     */
+    public List<Bulkhead> getBulkheads() {
+        return List.of(readBulkhead, writeBulkhead, scanBulkhead);
+    }
+
     /**
      * In order for the test cases to work, you will need to write the endpoints in the startAPI() method, as the test
      * suite must receive a Javalin object from this method.
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
-        app.post("/register", this::postUserHandler);
-        app.post("/login", this::loginUserHandler);
-        app.post("/messages", this::postMessageHandler);
-        app.get("/messages", this::getAllMessagesHandler);
-        app.get("/messages/{message_id}", this::getMessageByIDHandler);  
-        app.delete("/messages/{message_id}", this::deleteMessageByIDHandler);
-        app.patch("/messages/{message_id}", this::updateMessageByIDHandler);
-        app.get("/accounts/{account_id}/messages", this::getAllMessagesByIDHandler);
+        return startAPI(VIRTUAL_THREADS, ASYNC_HANDLERS);
+    }
+
+    /**
+     * Same as startAPI(), choosing how requests are run rather than going by the server.virtualThreads property.
+     * @param virtualThreads true to run each request on a new virtual thread, false to run requests on a bounded pool
+     *                       of platform threads.
+     * @throws IllegalStateException if virtualThreads is true and this Java runtime has no virtual threads.
+     */
+    public Javalin startAPI(boolean virtualThreads) {
+        return startAPI(virtualThreads, ASYNC_HANDLERS);
+    }
+
+    /**
+     * Same as startAPI(), choosing how requests are run rather than going by the server.virtualThreads and
+     * server.asyncHandlers properties.
+     * @param asyncHandlers true to run handlers on the read, write and scan bulkheads, false to run them on the thread
+     *                      serving the request.
+     */
+    public Javalin startAPI(boolean virtualThreads, boolean asyncHandlers) {
+        this.asyncHandlers = asyncHandlers;
+        QueuedThreadPool threadPool = new QueuedThreadPool(SERVER_MAX_THREADS, SERVER_MIN_THREADS);
+        threadPool.setName("JettyServerThreadPool");
+        if (virtualThreads) {
+            //Jetty keeps its selector threads on the pool, but hands each request to a new virtual thread
+            threadPool.setUseVirtualThreads(true);
+            if (!threadPool.isUseVirtualThreads()) {
+                throw new IllegalStateException("Virtual threads need Java 21 or later, this is Java "
+                        + System.getProperty("java.version"));
+            }
+        }
+        compressionFilter = new CompressionFilter(COMPRESSION_MIN_SIZE, COMPRESSION_LEVEL);
+        Javalin app = Javalin.create(config -> {
+            //the pool is always given explicitly, as Javalin would otherwise switch to virtual threads by itself
+            //whenever the runtime has them
+            config.jetty.server(() -> new Server(threadPool));
+            //responses are compressed by CompressionFilter, in front of Javalin, instead of by Javalin itself
+            config.compression.none();
+            config.jetty.contextHandlerConfig(handler -> handler.addFilter(new FilterHolder(compressionFilter),
+                    "/*", EnumSet.of(DispatcherType.REQUEST)));
+        });
+        readBulkhead = new Bulkhead("read", READ_THREADS, READ_QUEUE_DEPTH);
+        writeBulkhead = new Bulkhead("write", WRITE_THREADS, WRITE_QUEUE_DEPTH);
+        scanBulkhead = new Bulkhead("scan", SCAN_THREADS, SCAN_QUEUE_DEPTH);
+        app.events(event -> {
+            event.serverStopped(() -> getBulkheads().forEach(Bulkhead::shutdown));
+            event.handlerAdded(this::addRouteMetrics);
+        });
+        app.before(ctx -> ctx.attribute(REQUEST_START, System.nanoTime()));
+        app.after(this::recordRequest);
+
+        app.get("/metrics", this::metricsHandler);
+
+        app.post("/register", async(writeBulkhead, this::postUserHandler));
+        app.post("/login", async(readBulkhead, this::loginUserHandler));
+        app.post("/messages", async(writeBulkhead, this::postMessageHandler));
+        app.post("/messages/bulk", async(writeBulkhead, this::postMessagesBulkHandler));
+        app.get("/messages", async(scanBulkhead, this::getAllMessagesHandler));
+        app.get("/messages/{message_id}", async(readBulkhead, this::getMessageByIDHandler));
+        app.delete("/messages/{message_id}", async(writeBulkhead, this::deleteMessageByIDHandler));
+        app.patch("/messages/{message_id}", async(writeBulkhead, this::updateMessageByIDHandler));
+        app.get("/accounts/{account_id}/messages", async(readBulkhead, this::getAllMessagesByIDHandler));
         return app;
     }
 
+    /**
+     * Wrap handler so that it runs on one of bulkhead's threads, leaving the thread serving the request free. A
+     * request arriving while the bulkhead is full gets a 503 with a Retry-After header, without handler being run.
+     * Unless async handlers are on (server.asyncHandlers), handler is returned as it is and runs on the thread serving
+     * the request.
+     */
+    private Handler async(Bulkhead bulkhead, Handler handler) {
+        if (!asyncHandlers) {
+            return handler;
+        }
+        return ctx -> ctx.future(() -> {
+            try {
+                return bulkhead.submit(() -> {
+                    handler.handle(ctx);
+                    return null;
+                });
+            } catch (RejectedExecutionException e) {
+                ctx.status(503);
+                ctx.header("Retry-After", String.valueOf(BULKHEAD_RETRY_AFTER_SECONDS));
+                return CompletableFuture.completedFuture(null);
+            }
+        });
+    }
+
     /**
      * Handler to register a new user account.
      * The Jackson ObjectMapper will automatically convert the JSON of the POST request into an Account object.
@@ -58,16 +307,15 @@ public SocialMediaController(){
      * message (client error).
      * @param ctx the context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object. 
+     * @throws IOException will be thrown if the request body cannot be read or converted from JSON into an object.
      */
-    private void postUserHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
+    private void postUserHandler(Context ctx) throws IOException {
+        Account account = Json.ACCOUNT_READER.readValue(ctx.bodyInputStream());
         Account addedAccount = accountService.addAccount(account);
 
         //if adding the user is successful, post the new message to add in the response body via ctx object/variable
         if(addedAccount != null) {
-            ctx.json(mapper.writeValueAsString(addedAccount));
+            writeJson(ctx, Json.ACCOUNT_WRITER, addedAccount);
             ctx.status(200);
         } else { //addedAccount==null or other login requirements not met
             ctx.status(400);
@@ -91,10 +339,9 @@ public SocialMediaController(){
      * 
      * @param ctx the context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object. 
+     * @throws IOException will be thrown if the request body cannot be read or converted from JSON into an object.
      */
-    private void loginUserHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void loginUserHandler(Context ctx) throws IOException {
         
         //Using mapperobject instead of pathparam and adjusting endpoint accordingly
         //to not use (username and password, instead retrieve them from ctx.body/mapper Account object):
@@ -102,14 +349,14 @@ public SocialMediaController(){
         //String password = ctx.pathParam("password");
         //System.out.println(username + " " + password); // for debug but doesn't work
         
-        Account account = mapper.readValue(ctx.body(), Account.class);
+        Account account = Json.ACCOUNT_READER.readValue(ctx.bodyInputStream());
         String username = account.getUsername();
         String password = account.getPassword();
         
         Account foundAccount = accountService.getAccountByLogin(username, password);
         
         if(foundAccount != null) {
-            ctx.json(mapper.writeValueAsString(foundAccount));
+            writeJson(ctx, Json.ACCOUNT_WRITER, foundAccount);
             ctx.status(200);
         } else {
             ctx.status(401);
@@ -128,37 +375,98 @@ public SocialMediaController(){
      * 
      * The Jackson ObjectMapper will automatically convert the JSON of the POST request into an Account object.
      * If accountService returns a null account (meaning posting a account was unsuccessful, the API will return a 400
-     * message (client error).
+     * message (client error). If posted_by has used up their write rate limit, the API returns a 429 (Too Many
+     * Requests) with a Retry-After header.
      * @param ctx the context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object. 
+     * @throws IOException will be thrown if the request body cannot be read or converted from JSON into an object.
      */
-    private void postMessageHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(ctx.body(),Message.class);
+    private void postMessageHandler(Context ctx) throws IOException {
+        Message message = Json.MESSAGE_READER.readValue(ctx.bodyInputStream());
         // message in body has message_id AND posted_by which refers to an account id
-        int foundAccountID = message.getPosted_by();
-        Account foundAccount = accountService.getAccountByID(foundAccountID);
+        int postedBy = message.getPosted_by();
 
         //then post the new message to add in the response body via ctx object/variable
         String messageText = message.getMessage_text();
         long messageTimePosted = message.getTime_posted_epoch();
 
-
-        //message not blank, not message over 255 char, and related to real user
-        if(messageText.compareTo(new String("")) != 0 && 
-            messageText.length() < 255 && foundAccount != null) {
+        //message not blank, not message over 255 char
+        if(MessageService.isValidMessageText(messageText)) {
+            //only a message that may be added counts against posted_by's rate limit
+            if (!allowWrite(ctx, writeRateLimiter, postedBy)) {
+                return;
+            }
        
             //the message ID isn't given until the message has been added
             //using message service
-            Message messageToAdd = new Message(foundAccountID, messageText, messageTimePosted); 
+            Message messageToAdd = new Message(postedBy, messageText, messageTimePosted); 
             //messageToAdd has no message_id
+            //the insert itself rejects a posted_by that is not a real user (foreign key), returning null
             Message messageAdded = messageService.addMessage(messageToAdd); 
             //messageAdded has a message_id now
             //now, write messageAdded to json response using mapper
-            ctx.json(mapper.writeValueAsString(messageAdded));
+            if (messageAdded != null) {
+                writeJson(ctx, Json.MESSAGE_WRITER, messageAdded);
+                ctx.status(200);
+                return;
+            }
+        }
+        ctx.status(400); //message text invalid, or posted_by not a real user
+    }
+
+    /**
+     * Handler to post many new messages at once, for backfilling messages from other systems.
+     * 
+     * The request body is either a JSON list of messages or newline-delimited JSON (one message per line), each in
+     * the same form POST localhost:8080/messages accepts. Every message must pass the same checks: message_text not
+     * blank, not over 255 characters, and posted_by referring to a real, existing user. The authors of all messages
+     * are looked up with a single query.
+     * 
+     * If every message is valid, they are all persisted in one transaction and the response body contains a JSON
+     * list of the new messages, including their message_ids, in the order given. If any message is invalid, or the
+     * body is not valid JSON, nothing is persisted and the response status is 400. A body with more than
+     * MAX_BULK_MESSAGES messages is rejected with 413.
+     * 
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin. It will
+     *            be available to this method automatically thanks to the app.post method.
+     * @throws IOException will be thrown if the request body cannot be read.
+     */
+    private void postMessagesBulkHandler(Context ctx) throws IOException {
+        List<Message> messagesToAdd = new ArrayList<>();
+        Set<Integer> authorIDs = new HashSet<>();
+        try {
+            //readValues walks the elements of a top-level list, or consecutive top-level values for NDJSON
+            MappingIterator<Message> messages = Json.MESSAGE_READER.readValues(ctx.bodyInputStream());
+            while (messages.hasNextValue()) {
+                Message message = messages.nextValue();
+                if (messagesToAdd.size() == MAX_BULK_MESSAGES) {
+                    ctx.status(413);
+                    return;
+                }
+                if (!MessageService.isValidMessageText(message.getMessage_text())) {
+                    ctx.status(400);
+                    return;
+                }
+                //the message ID isn't given until the message has been added
+                messagesToAdd.add(new Message(message.getPosted_by(), message.getMessage_text(),
+                        message.getTime_posted_epoch()));
+                authorIDs.add(message.getPosted_by());
+            }
+        } catch (JsonProcessingException e) {
+            ctx.status(400);
+            return;
+        }
+
+        if (!accountService.getExistingAccountIDs(authorIDs).containsAll(authorIDs)) {
+            ctx.status(400);
+            return;
+        }
+        List<Message> messagesAdded = messagesToAdd.isEmpty() ? messagesToAdd
+                : messageService.addMessages(messagesToAdd);
+        if (messagesAdded != null) {
+            writeJson(ctx, Json.MESSAGE_LIST_WRITER, messagesAdded);
             ctx.status(200);
-        } else { //foundAccount == null etc
+        } else {
             ctx.status(400);
         }
     }
@@ -173,16 +481,44 @@ public SocialMediaController(){
      * It is expected for the list to simply be empty if there are no messages.
      * The response status should always be 200, which is the default.
      * 
+     * If a 'limit' or 'after' query parameter is given, only one page of messages (ordered by message_id) is
+     * returned, and the cursor for the next page, if any, is sent in the X-Next-Cursor response header. Passing that
+     * cursor back as 'after' returns the following page. A malformed limit or cursor is a 400 (client error).
+     * 
+     * Otherwise, if the client sends 'stream=true' or accepts application/x-ndjson, messages are written to the
+     * response as they are read from the database instead of being collected into a list first.
+     * 
+     * The response carries an ETag that changes whenever any message is added, updated or deleted. A request whose If-None-Match header holds the
+     * current ETag is answered 304 (Not Modified) without reading the messages.
+     * 
      * The Jackson ObjectMapper will automatically convert the JSON of the POST request into an object.
      * 
      * @param ctx the context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object. 
+     * @throws IOException will be thrown if there is an issue converting an object into JSON or writing the response.
      */
-    private void getAllMessagesHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void getAllMessagesHandler(Context ctx) throws IOException {
+        String version = MessageService.getAllMessagesVersion(); //read before the messages, see notModified
+        boolean pageRequest = isPageRequest(ctx);
+        Integer limit = pageLimit(ctx);
+        Cursor after = pageCursor(ctx);
+        if (pageRequest && (limit == null || (after == null && ctx.queryParam("after") != null))) {
+            ctx.status(400);
+            return;
+        }
+        if (notModified(ctx, version)) {
+            return;
+        }
+        if (pageRequest) {
+            writePage(ctx, messageService.getMessagesPage(after, limit));
+            return;
+        }
+        if (isStreamRequest(ctx)) {
+            streamMessages(ctx, messageService::streamAllMessages);
+            return;
+        }
         List<Message> messages = messageService.getAllMessages();
-        ctx.json(mapper.writeValueAsString(messages));
+        writeJson(ctx, Json.MESSAGE_LIST_WRITER, messages);
         ctx.status(200);
     }
 
@@ -196,6 +532,9 @@ public SocialMediaController(){
      * simply be empty if there is no such message. The response status should 
      * always be 200, which is the default.
      * 
+     * The response carries an ETag that changes whenever the message is added, updated or deleted. A request whose
+     * If-None-Match header holds the current ETag is answered 304 (Not Modified) without reading the message.
+     * 
      * The Jackson ObjectMapper will automatically convert the JSON of the POST request into an object.
      * 
      * @param ctx the context object handles information HTTP requests and generates responses within Javalin. It will
@@ -203,11 +542,13 @@ public SocialMediaController(){
      * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object. 
      */
     private void getMessageByIDHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
         int id = Integer.parseInt(ctx.pathParam("message_id"));
+        if (notModified(ctx, MessageService.getMessageVersion(id))) {
+            return;
+        }
         Message message = MessageService.getMessageByID(id);
         if (message != null) {
-            ctx.json(mapper.writeValueAsString(message));
+            writeJson(ctx, Json.MESSAGE_WRITER, message);
         }
         ctx.status(200);
     }
@@ -232,13 +573,12 @@ public SocialMediaController(){
      * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.  
      */
     private void deleteMessageByIDHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
         int id = Integer.parseInt(ctx.pathParam("message_id"));
         Message message = MessageService.deleteMessageByID(id);
         //if existed & deleted, the response body should include the NOW-DELETED message
         //if did not exist & no delete, the response body should be empty
         if (message != null) {
-            ctx.json(mapper.writeValueAsString(message));
+            writeJson(ctx, Json.MESSAGE_WRITER, message);
         } //may need to write to json empty string if no delete performed
         ctx.status(200);
     }
@@ -257,36 +597,41 @@ public SocialMediaController(){
      * posted_by, message_text, and time_posted_epoch), and the response status should be 200, which is the default. 
      * The message existing on the database should have the updated message_text.
      * If the update of the message is not successful for any reason, the response status should be 400. (Client error)
+     * If the message's author has used up their write rate limit, the response status is 429 (Too Many Requests).
      * 
      * The Jackson ObjectMapper will automatically convert the JSON of the POST request into an object.
      * 
      * @param ctx the context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.  
+     * @throws IOException will be thrown if the request body cannot be read or converted from JSON into an object.
      */
-    private void updateMessageByIDHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void updateMessageByIDHandler(Context ctx) throws IOException {
         int idToUpdate = Integer.parseInt(ctx.pathParam("message_id")); //id to update from pathParam
-        Message newMessage = mapper.readValue(ctx.body(),Message.class); //message(text) from body
+        Message newMessage = Json.MESSAGE_READER.readValue(ctx.bodyInputStream()); //message(text) from body
         String newMessageText = newMessage.getMessage_text();
 
+        //message not blank, not message over 255 char
+        if(MessageService.isValidMessageText(newMessageText)) {
+            //the update counts against the rate limit of the message's author, found through the message cache;
+            //a missing message is left to the 400 below
+            if (writeRateLimiter != null) {
+                Message existingMessage = MessageService.getMessageByID(idToUpdate);
+                if (existingMessage != null && !allowWrite(ctx, writeRateLimiter, existingMessage.getPosted_by())) {
+                    return;
+                }
+            }
 
-
-        //message not blank, not message over 255 char, and related to real user
-        if(newMessageText.compareTo(new String("")) != 0 && 
-                newMessageText.length() < 255 && MessageService.getMessageByID(idToUpdate) != null) {
-
+            //updates and reads back the message in one statement; null if the message id does not exist
             Message updatedMessage = messageService.updateMessage(idToUpdate, newMessage);
-            updatedMessage.setMessage_text(newMessageText);
 
             //if existed & replaced, the response body should include the NOW-UPDATED message
-            //if did not exist & no update, the response body should be empty (null)
-            ctx.json(mapper.writeValueAsString(updatedMessage));
-            ctx.status(200);
-
-        } else { //updatedMessage == null etc
-            ctx.status(400);
-        }        
+            if (updatedMessage != null) {
+                writeJson(ctx, Json.MESSAGE_WRITER, updatedMessage);
+                ctx.status(200);
+                return;
+            }
+        }
+        ctx.status(400); //updatedMessage == null etc
     }
 
     /**
@@ -297,19 +642,342 @@ public SocialMediaController(){
      * list to simply be empty if there are no messages. The response status should always be 200, 
      * which is the default.
      * 
+     * Accepts the same 'limit' and 'after' query parameters as GET /messages; pages are ordered by
+     * time_posted_epoch, then message_id. Also accepts the same streaming options as GET /messages.
+     * 
+     * The response carries an ETag that changes whenever one of the account's messages is added, updated or deleted. A request whose If-None-Match header holds the
+     * current ETag is answered 304 (Not Modified) without reading the messages.
+     * 
      * The Jackson ObjectMapper will automatically convert the JSON of the POST request into an object.
      * 
      * @param ctx the context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object. 
+     * @throws IOException will be thrown if there is an issue converting an object into JSON or writing the response.
      */
-    private void getAllMessagesByIDHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void getAllMessagesByIDHandler(Context ctx) throws IOException {
         int accountID = Integer.parseInt(ctx.pathParam("account_id")); //id to update from pathParam
+        String version = MessageService.getAccountMessagesVersion(accountID); //read before the messages
+        boolean pageRequest = isPageRequest(ctx);
+        Integer limit = pageLimit(ctx);
+        Cursor after = pageCursor(ctx);
+        if (pageRequest && (limit == null || (after == null && ctx.queryParam("after") != null))) {
+            ctx.status(400);
+            return;
+        }
+        if (notModified(ctx, version)) {
+            return;
+        }
+        if (pageRequest) {
+            writePage(ctx, MessageService.getMessagesByAccountIDPage(accountID, after, limit));
+            return;
+        }
+        if (isStreamRequest(ctx)) {
+            streamMessages(ctx, sink -> MessageService.streamMessagesByAccountID(accountID, sink));
+            return;
+        }
         List<Message> messages = MessageService.getMessagesByAccountID(accountID);
-        ctx.json(mapper.writeValueAsString(messages));
+        writeJson(ctx, Json.MESSAGE_LIST_WRITER, messages);
+        ctx.status(200);
+    }
+
+    /**
+     * Set up the request metrics of a route as it is added, so that recording a request never has to.
+     */
+    private void addRouteMetrics(HandlerMetaInfo route) {
+        HandlerType method = route.getHttpMethod();
+        if (method == HandlerType.BEFORE || method == HandlerType.AFTER) {
+            return;
+        }
+        RouteMetrics metrics = new RouteMetrics(method.name(), route.getPath());
+        routeMetrics.computeIfAbsent(route.getPath(), path -> new RouteMetrics[HandlerType.values().length])
+                [method.ordinal()] = metrics;
+        routeMetricsList.add(metrics);
+    }
+
+    /**
+     * After handler counting the request against its route. Requests matching no route are counted together.
+     */
+    private void recordRequest(Context ctx) {
+        Long start = ctx.attribute(REQUEST_START);
+        if (start == null) {
+            return;
+        }
+        String path = ctx.endpointHandlerPath();
+        RouteMetrics[] byMethod = path != null ? routeMetrics.get(path) : null;
+        RouteMetrics metrics = byMethod != null ? byMethod[ctx.method().ordinal()] : null;
+        (metrics != null ? metrics : unmatchedRouteMetrics).record(ctx.statusCode(), System.nanoTime() - start);
+    }
+
+    /**
+     * Handler for GET /metrics, which Prometheus scrapes.
+     *
+     * The response is in the Prometheus text format and holds request counts by route and status, latency
+     * percentiles by route, query latency and row counts by query, and the state of the connection pool, caches,
+     * bulkheads, response compression and write rate limit.
+     */
+    private void metricsHandler(Context ctx) {
+        PrometheusText out = new PrometheusText();
+        List<RouteMetrics> routes = new ArrayList<>(routeMetricsList);
+        routes.add(unmatchedRouteMetrics);
+
+        out.family("http_requests_total", "counter", "Requests served, by route and response status.");
+        routes.forEach(route -> route.writeRequestCounts(out));
+        out.family("http_request_duration_seconds", "summary", "Time taken to serve requests, by route.");
+        routes.forEach(route -> route.writeLatency(out, LATENCY_QUANTILES));
+
+        ConnectionPool.Stats pool = ConnectionUtil.getPoolStats();
+        out.family("db_pool_connections", "gauge", "Open database connections, by state.")
+                .sample("db_pool_connections", pool.getActive(), "state", "active")
+                .sample("db_pool_connections", pool.getIdle(), "state", "idle");
+        out.single("db_pool_max_connections", "gauge", "Most database connections borrowed at once.",
+                pool.getMaxSize());
+        out.single("db_pool_waiting_threads", "gauge", "Threads waiting for a database connection.",
+                pool.getWaiting());
+        out.single("db_pool_acquired_total", "counter", "Database connections borrowed.", pool.getAcquired());
+        out.single("db_pool_timeouts_total", "counter", "Waits for a database connection that timed out.",
+                pool.getTimeouts());
+
+        List<QueryMetrics> queries = QueryMetrics.getAll();
+        out.family("db_query_duration_seconds", "summary", "Time taken by database queries, by query.");
+        for (QueryMetrics query : queries) {
+            Histogram latency = query.getLatency();
+            for (double quantile : LATENCY_QUANTILES) {
+                out.sample("db_query_duration_seconds", latency.getValueAtQuantileNanos(quantile) / 1e9,
+                        "query", query.getName(), "quantile", String.valueOf(quantile));
+            }
+            out.sample("db_query_duration_seconds_sum", latency.getSumNanos() / 1e9, "query", query.getName());
+            out.sample("db_query_duration_seconds_count", latency.getCount(), "query", query.getName());
+        }
+        out.family("db_query_rows_total", "counter", "Rows read or changed by database queries, by query.");
+        queries.forEach(query -> out.sample("db_query_rows_total", query.getRows(), "query", query.getName()));
+        out.family("db_query_errors_total", "counter", "Database queries that failed, by query.");
+        queries.forEach(query -> out.sample("db_query_errors_total", query.getErrors(), "query", query.getName()));
+        out.single("db_slow_queries_total", "counter", "Database queries slower than db.slowQueryMillis.",
+                QueryMetrics.getSlowQueryCount());
+
+        Map<String, Cache.Stats> caches = new LinkedHashMap<>();
+        caches.put("account", accountService.getAccountCacheStats());
+        caches.put("message", MessageService.getMessageCacheStats());
+        caches.put("timeline", MessageService.getTimelineCacheStats());
+        out.family("cache_hits_total", "counter", "Cache lookups answered from memory.");
+        caches.forEach((name, stats) -> out.sample("cache_hits_total", stats.getHits(), "cache", name));
+        out.family("cache_misses_total", "counter", "Cache lookups that went to the database.");
+        caches.forEach((name, stats) -> out.sample("cache_misses_total", stats.getMisses(), "cache", name));
+        out.family("cache_evictions_total", "counter", "Cache entries evicted to make room.");
+        caches.forEach((name, stats) -> out.sample("cache_evictions_total", stats.getEvictions(), "cache", name));
+        out.family("cache_expirations_total", "counter", "Cache entries dropped on expiry.");
+        caches.forEach((name, stats) -> out.sample("cache_expirations_total", stats.getExpirations(),
+                "cache", name));
+
+        Map<String, SingleFlight.Stats> flights = MessageService.getSingleFlightStats();
+        out.family("singleflight_loads_total", "counter", "Database reads run for a key, by kind of read.");
+        flights.forEach((name, stats) -> out.sample("singleflight_loads_total", stats.getLoads(), "flight", name));
+        out.family("singleflight_collapsed_total", "counter",
+                "Reads that shared a database read already running for the same key, by kind of read.");
+        flights.forEach((name, stats) -> out.sample("singleflight_collapsed_total", stats.getCollapsed(),
+                "flight", name));
+
+        out.family("bulkhead_active_threads", "gauge", "Handlers running, by bulkhead.");
+        getBulkheads().forEach(bulkhead -> out.sample("bulkhead_active_threads", bulkhead.getStats().getActive(),
+                "bulkhead", bulkhead.getName()));
+        out.family("bulkhead_queued_tasks", "gauge", "Handlers waiting for a thread, by bulkhead.");
+        getBulkheads().forEach(bulkhead -> out.sample("bulkhead_queued_tasks", bulkhead.getStats().getQueued(),
+                "bulkhead", bulkhead.getName()));
+        out.family("bulkhead_rejected_total", "counter", "Requests turned away with a 503, by bulkhead.");
+        getBulkheads().forEach(bulkhead -> out.sample("bulkhead_rejected_total", bulkhead.getStats().getRejected(),
+                "bulkhead", bulkhead.getName()));
+
+        CompressionFilter.Stats compression = getCompressionStats();
+        out.single("compression_bytes_in_total", "counter", "Bytes of response bodies that were compressed.",
+                compression.getBytesIn());
+        out.single("compression_bytes_out_total", "counter", "Bytes sent for compressed response bodies.",
+                compression.getBytesOut());
+        out.single("compression_seconds_total", "counter", "Time spent compressing response bodies.",
+                compression.getCompressionNanos() / 1e9);
+
+        RateLimiter.Stats rateLimit = getWriteRateLimiterStats();
+        if (rateLimit != null) {
+            out.single("ratelimit_rejected_total", "counter", "Message writes turned away with a 429.",
+                    rateLimit.getRejected());
+            out.single("ratelimit_buckets", "gauge", "Accounts with rate limit state held in memory.",
+                    rateLimit.getBuckets());
+        }
+
+        GroupCommitMessageDAO.Stats groupCommit = MessageService.getGroupCommitStats();
+        if (groupCommit != null) {
+            out.single("group_commit_transactions_total", "counter", "Transactions committed by group commit.",
+                    groupCommit.getBatches());
+            out.single("group_commit_messages_total", "counter", "Messages added by group commit.",
+                    groupCommit.getRows());
+            out.single("group_commit_retries_total", "counter",
+                    "Group commits refused as a whole and retried a message at a time.", groupCommit.getRetries());
+        }
+
+        ctx.contentType(PrometheusText.CONTENT_TYPE);
+        ctx.result(out.toString());
+    }
+
+    /**
+     * Write the value as the JSON response body. The value is serialized once, straight to bytes, by a writer that
+     * was built ahead of time for its type.
+     */
+    private void writeJson(Context ctx, ObjectWriter writer, Object value) throws JsonProcessingException {
+        ctx.contentType("application/json");
+        ctx.result(writer.writeValueAsBytes(value));
+    }
+
+    /**
+     * @return whether the client asked for a single page rather than the whole list
+     */
+    private boolean isPageRequest(Context ctx) {
+        return ctx.queryParam("limit") != null || ctx.queryParam("after") != null;
+    }
+
+    /**
+     * Read the 'limit' query parameter, defaulting when absent and clamping to the maximum page size.
+     * 
+     * @return the page size, or null if the parameter is not a positive number
+     */
+    private Integer pageLimit(Context ctx) {
+        String limit = ctx.queryParam("limit");
+        if (limit == null) {
+            return DEFAULT_PAGE_LIMIT;
+        }
+        try {
+            int parsed = Integer.parseInt(limit);
+            return parsed < 1 ? null : Math.min(parsed, MAX_PAGE_LIMIT);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the 'after' query parameter.
+     * 
+     * @return the decoded cursor, or null if the parameter is absent or malformed
+     */
+    private Cursor pageCursor(Context ctx) {
+        String after = ctx.queryParam("after");
+        if (after == null) {
+            return null;
+        }
+        try {
+            return Cursor.decode(after);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether the client asked for the list to be streamed, either with 'stream=true' or by accepting NDJSON
+     */
+    private boolean isStreamRequest(Context ctx) {
+        return "true".equals(ctx.queryParam("stream")) || acceptsNdjson(ctx);
+    }
+
+    /**
+     * @return whether the client accepts newline-delimited JSON
+     */
+    private boolean acceptsNdjson(Context ctx) {
+        String accept = ctx.header("Accept");
+        return accept != null && accept.contains(NDJSON);
+    }
+
+    /**
+     * Label the response with an ETag for the version of the data it is built from, and answer 304 (Not Modified)
+     * with no body if the client sent that ETag in If-None-Match, so the data is not read or sent again.
+     * 
+     * The version must be read before the data: a write landing in between then leaves the ETag older than the body,
+     * which only costs the client a full response next time, rather than newer, which would keep the client on the
+     * old body. NDJSON and JSON bodies of the same data get different ETags.
+     * 
+     * @return whether the response is complete
+     */
+    private boolean notModified(Context ctx, String version) {
+        String etag = "\"" + version + (acceptsNdjson(ctx) ? "-nd" : "") + "\"";
+        ctx.header("ETag", etag);
+        ctx.header("Cache-Control", "no-cache"); //may be stored, but must be revalidated before reuse
+        ctx.header("Vary", "Accept");
+        String ifNoneMatch = ctx.header("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                ctx.status(304);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A source of messages that hands them to a sink one at a time.
+     */
+    private interface MessageStream {
+        void writeTo(MessageSink sink) throws IOException;
+    }
+
+    /**
+     * Write messages straight to the response output stream as the database produces them, so the response never
+     * holds more than a few rows in memory and the first bytes go out before the last row is read.
+     * The body is newline-delimited JSON if the client accepts application/x-ndjson, or else a JSON list.
+     */
+    private void streamMessages(Context ctx, MessageStream messages) throws IOException {
+        boolean ndjson = acceptsNdjson(ctx);
         ctx.status(200);
-    }    
+        ctx.contentType(ndjson ? NDJSON : "application/json");
+
+        JsonGenerator generator = Json.MAPPER.getFactory().createGenerator(ctx.outputStream());
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        if (!ndjson) {
+            generator.writeStartArray();
+        }
+        messages.writeTo(message -> {
+            generator.writeObject(message);
+            if (ndjson) {
+                generator.writeRaw('\n');
+            }
+        });
+        if (!ndjson) {
+            generator.writeEndArray();
+        }
+        generator.flush();
+    }
+
+    /**
+     * Take a token from key's bucket of rateLimiter. If there is none left, answer with a 429 and a Retry-After header
+     * saying when to try again.
+     * @return true if the write may go ahead
+     */
+    private boolean allowWrite(Context ctx, RateLimiter rateLimiter, int key) {
+        if (rateLimiter == null) {
+            return true;
+        }
+        long waitMillis = rateLimiter.tryAcquire(key);
+        if (waitMillis == 0) {
+            return true;
+        }
+        ctx.status(429);
+        ctx.header("Retry-After", String.valueOf((waitMillis + 999) / 1000));
+        return false;
+    }
+
+    /**
+     * Write a page of messages as a JSON list, with the next page's cursor in the X-Next-Cursor header.
+     */
+    private void writePage(Context ctx, MessagePage page) throws JsonProcessingException {
+        if (page.getNext_cursor() != null) {
+            ctx.header(NEXT_CURSOR_HEADER, page.getNext_cursor());
+        }
+        writeJson(ctx, Json.MESSAGE_LIST_WRITER, page.getMessages());
+        ctx.status(200);
+    }
     
 
 
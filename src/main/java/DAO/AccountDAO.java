@@ -3,13 +3,29 @@ package DAO;
 import Model.Account; //fixes Account to resolve to type, as in: List<Account>
 //import Service.AccountService;
 import Util.ConnectionUtil;
+import Util.QueryMetrics;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class AccountDAO {
 
+    /*
+     * SQL run by this DAO. Kept together so the statements can be checked against the schema's indexes.
+     */
+    public static final String SELECT_ALL_ACCOUNTS = "select * from account";
+    public static final String SELECT_ACCOUNT_BY_ID = "select * from account where account_id = ?";
+    public static final String INSERT_ACCOUNT = "insert into account (username, password) values (?,?)";
+    public static final String UPDATE_ACCOUNT = "update account set username=?, password=? where account_id=?;";
+    public static final String SELECT_ACCOUNT_BY_LOGIN = "select * from account where username = ? AND password = ?;";
+    public static final String SELECT_ACCOUNTS_BY_IDS = "select * from account where account_id = any(?)";
+
+    static {
+        QueryMetrics.nameQueries(AccountDAO.class);
+    }
+
     /**
      * Retrieve all accounts from the accounts table
      * 
@@ -17,12 +33,14 @@ public class AccountDAO {
      */
     public List<Account> getAllAccounts() {
         Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
         List<Account> accounts = new ArrayList<>();
         try {
-            String sql = "select * from account";
+            String sql = SELECT_ALL_ACCOUNTS;
 
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            ResultSet rs = preparedStatement.executeQuery();
+            preparedStatement = connection.prepareStatement(sql);
+            rs = preparedStatement.executeQuery();
             while(rs.next()){
                 Account account = new Account(rs.getInt("account_id"), rs.getString("username"),
                         rs.getString("password"));
@@ -30,6 +48,8 @@ public class AccountDAO {
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(rs, preparedStatement, connection);
         }
         return accounts;        
     }
@@ -42,13 +62,15 @@ public class AccountDAO {
      */
     public Account getAccountByID(int id)  {
         Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
         try {
-            String sql = "select * from account where account_id = ?";
+            String sql = SELECT_ACCOUNT_BY_ID;
             
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement = connection.prepareStatement(sql);
             preparedStatement.setInt(1, id);
 
-            ResultSet rs = preparedStatement.executeQuery();
+            rs = preparedStatement.executeQuery();
             if(rs.next()){
                 Account account = new Account(rs.getInt("account_id"), rs.getString("username"),
                 rs.getString("password"));
@@ -57,6 +79,8 @@ public class AccountDAO {
 
         }   catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(rs, preparedStatement, connection);
         }
         return null;
     }
@@ -71,20 +95,24 @@ public class AccountDAO {
      */
     public Account insertAccount(Account account) {
         Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
         try {
-            String sql = "insert into account (username, password) values (?,?)";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            String sql = INSERT_ACCOUNT;
+            preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
             preparedStatement.setString(1,account.getUsername());
             preparedStatement.setString(2,account.getPassword());
 
             preparedStatement.executeUpdate();
-            ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
-            if(pkeyResultSet.next()){
-                int generated_account_id = (int) pkeyResultSet.getLong(1);
+            rs = preparedStatement.getGeneratedKeys();
+            if(rs.next()){
+                int generated_account_id = (int) rs.getLong(1);
                 return new Account(generated_account_id, account.getUsername(), account.getPassword());
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(rs, preparedStatement, connection);
         }
         return null;
     }
@@ -98,9 +126,10 @@ public class AccountDAO {
      */
     public void updateAccount(int id, Account account) {
         Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
         try {
-            String sql = "update account set username=?, password=? where account_id=?;";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            String sql = UPDATE_ACCOUNT;
+            preparedStatement = connection.prepareStatement(sql);
 
             preparedStatement.setString(1,account.getUsername());
             preparedStatement.setString(2,account.getPassword());
@@ -109,6 +138,8 @@ public class AccountDAO {
             preparedStatement.executeUpdate();
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(preparedStatement, connection);
         }        
     }
 
@@ -121,14 +152,16 @@ public class AccountDAO {
      */
     public Account getAccountByLogin(String username, String password)  {
         Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
         try {
-            String sql = "select * from account where username = ? AND password = ?;";
+            String sql = SELECT_ACCOUNT_BY_LOGIN;
             
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement = connection.prepareStatement(sql);
             preparedStatement.setString(1, username);
             preparedStatement.setString(2, password);
 
-            ResultSet rs = preparedStatement.executeQuery();
+            rs = preparedStatement.executeQuery();
 
             if((rs.next())){
                 Account account = new Account(rs.getInt("account_id"), rs.getString("username"),
@@ -141,7 +174,43 @@ public class AccountDAO {
 
         }   catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(rs, preparedStatement, connection);
         }
         return null;
     }
+
+    /**
+     * Retrieve the accounts matching the account IDs provided, using a single query however many IDs are given.
+     * IDs that do not belong to an account are skipped.
+     * 
+     * @param ids account IDs to look for
+     * @return the accounts matching ids, in no particular order
+     */
+    public List<Account> getAccountsByIDs(Collection<Integer> ids) {
+        List<Account> accounts = new ArrayList<>();
+        if (ids.isEmpty()) {
+            return accounts;
+        }
+        Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        try {
+            String sql = SELECT_ACCOUNTS_BY_IDS;
+
+            preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setObject(1, ids.toArray(new Integer[0]));
+            rs = preparedStatement.executeQuery();
+            while(rs.next()){
+                Account account = new Account(rs.getInt("account_id"), rs.getString("username"),
+                rs.getString("password"));
+                accounts.add(account);
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(rs, preparedStatement, connection);
+        }
+        return accounts;
+    }
 }
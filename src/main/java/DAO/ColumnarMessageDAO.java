@@ -0,0 +1,542 @@
+package DAO;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import Model.Message;
+
+/**
+ * The ColumnarMessageDAO class keeps every message in memory and answers all reads from there, for read-heavy
+ * deployments where the message table fits in RAM. It is loaded from another repository (the database) when it is
+ * created, and writes go through to that repository first, so the database stays the store of record: it assigns
+ * message IDs, enforces the foreign key on posted_by and still has every message after a restart. Changes made to the
+ * database by anything else are not seen.
+ *
+ * Messages are held in primitive columns (message IDs, posted_by and times in int and long arrays, texts in a String
+ * array), one slot per message in the order they were added, which is message ID order. Two indexes point into the
+ * slots: an open-addressing hash table from message ID to slot, and per account a list of slots sorted by time posted
+ * then message ID, so every query is a hash lookup, a binary search or a walk over a list.
+ *
+ * Readers take no locks. Writers are serialized by a lock and never change anything a reader can see in a way that
+ * leaves it inconsistent: a slot is filled in before the size that makes it visible is raised, index entries are single
+ * longs written with release semantics, and arrays that have to grow or shrink are copied and the copy published, so a
+ * reader holding the old array still sees a consistent snapshot. A slot changed in place by an update or delete is
+ * guarded by its version, which is odd while the change is being made; readers retry until they read the slot under
+ * one even version, so they never see a new posted_by with an old time. A deleted message's slot keeps its message ID
+ * (so the slots stay sorted) but loses its text, which is how readers skip it.
+ *
+ * Slots are never reused, so the columns only ever grow: deleted messages keep taking up their slots until the
+ * process restarts.
+ */
+public class ColumnarMessageDAO implements MessageRepository {
+    private static final VarHandle INDEX_ENTRY = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle AUTHOR_LIST = MethodHandles.arrayElementVarHandle(AuthorList[].class);
+    private static final VarHandle SLOT_VERSION = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int LOAD_PAGE_SIZE = 10_000;
+    /**
+     * An index entry for a deleted message. Empty entries are 0; live ones hold the message ID, which is positive, in
+     * the high half and the slot in the low half.
+     */
+    private static final long TOMBSTONE = -1L;
+
+    private final MessageRepository backing;
+    private final Object writeLock = new Object();
+    private volatile Columns columns = new Columns(INITIAL_CAPACITY);
+    private volatile IdIndex index = new IdIndex(INITIAL_CAPACITY * 2);
+    private volatile AuthorList[] authors = new AuthorList[INITIAL_CAPACITY];
+    /**
+     * Whether every message was added with a larger message ID than the one before, so slots are in message ID order.
+     * Only false if something else wrote to the database; pages by message ID are then read from the database.
+     */
+    private volatile boolean slotsInIdOrder = true;
+    private int lastId;
+
+    /**
+     * Load every message from backing, which every write will go through to.
+     */
+    public ColumnarMessageDAO(MessageRepository backing) {
+        this.backing = backing;
+        synchronized (writeLock) {
+            List<Message> page = backing.getMessagesAfter(0, LOAD_PAGE_SIZE);
+            while (!page.isEmpty()) {
+                for (Message message : page) {
+                    add(message);
+                }
+                page = backing.getMessagesAfter(page.get(page.size() - 1).getMessage_id(), LOAD_PAGE_SIZE);
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages held
+     */
+    public int size() {
+        return index.live;
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        Columns columns = this.columns;
+        int size = columns.size;
+        List<Message> messages = new ArrayList<>(Math.min(size, index.live));
+        for (int slot = 0; slot < size; slot++) {
+            Message message = columns.read(slot);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public Message getMessageByID(int id) {
+        int slot = index.find(id);
+        return slot < 0 ? null : columns.read(slot);
+    }
+
+    @Override
+    public List<Message> getMessagesByAccountID(int id) {
+        return getMessagesByAccountIDAfter(id, Long.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void streamAllMessages(MessageSink sink) throws IOException {
+        Columns columns = this.columns;
+        int size = columns.size;
+        for (int slot = 0; slot < size; slot++) {
+            Message message = columns.read(slot);
+            if (message != null) {
+                sink.accept(message);
+            }
+        }
+    }
+
+    @Override
+    public void streamMessagesByAccountID(int id, MessageSink sink) throws IOException {
+        for (Message message : getMessagesByAccountID(id)) {
+            sink.accept(message);
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesAfter(int afterMessageId, int limit) {
+        if (!slotsInIdOrder) {
+            return backing.getMessagesAfter(afterMessageId, limit);
+        }
+        Columns columns = this.columns;
+        int size = columns.size;
+        //the first slot with a larger message ID than afterMessageId
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (columns.ids[middle] <= afterMessageId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        List<Message> messages = new ArrayList<>(Math.min(limit, size - low));
+        for (int slot = low; slot < size && messages.size() < limit; slot++) {
+            Message message = columns.read(slot);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public List<Message> getMessagesByAccountIDAfter(int id, long afterTime, int afterMessageId, int limit) {
+        AuthorList list = authorList(id);
+        if (list == null) {
+            return new ArrayList<>();
+        }
+        int size = list.size;
+        int[] slots = list.slots;
+        Columns columns = this.columns;
+        //the first entry after (afterTime, afterMessageId)
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (columns.compare(slots[middle], afterTime, afterMessageId) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        List<Message> messages = new ArrayList<>(Math.min(limit, size - low));
+        for (int i = low; i < size && messages.size() < limit; i++) {
+            Message message = columns.read(slots[i]);
+            //skip a message moved to another account since the list was read
+            if (message != null && message.getPosted_by() == id) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public List<Message> getRecentMessagesByAccountID(int id, int limit) {
+        AuthorList list = authorList(id);
+        if (list == null) {
+            return new ArrayList<>();
+        }
+        int size = list.size;
+        int[] slots = list.slots;
+        Columns columns = this.columns;
+        List<Message> messages = new ArrayList<>(Math.min(limit, size));
+        for (int i = size - 1; i >= 0 && messages.size() < limit; i--) {
+            Message message = columns.read(slots[i]);
+            //skip a message moved to another account since the list was read
+            if (message != null && message.getPosted_by() == id) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        synchronized (writeLock) {
+            Message inserted = backing.insertMessage(message);
+            if (inserted != null) {
+                add(inserted);
+            }
+            return inserted;
+        }
+    }
+
+    @Override
+    public List<Message> insertMessages(List<Message> messages, int chunkSize) {
+        synchronized (writeLock) {
+            List<Message> inserted = backing.insertMessages(messages, chunkSize);
+            if (inserted != null) {
+                for (Message message : inserted) {
+                    add(message);
+                }
+            }
+            return inserted;
+        }
+    }
+
+    @Override
+    public void updateMessage(int id, Message message) {
+        synchronized (writeLock) {
+            backing.updateMessage(id, message);
+            //the update may have been refused (e.g. by the foreign key), so keep whatever the database now holds
+            Message updated = backing.getMessageByID(id);
+            int slot = index.find(id);
+            if (updated == null || slot < 0) {
+                return;
+            }
+            Columns columns = this.columns;
+            if (columns.postedBy[slot] != updated.getPosted_by()
+                    || columns.times[slot] != updated.getTime_posted_epoch()) {
+                removeFromAuthor(columns.postedBy[slot], slot);
+                columns.beginChange(slot);
+                columns.postedBy[slot] = updated.getPosted_by();
+                columns.times[slot] = updated.getTime_posted_epoch();
+                columns.texts[slot] = updated.getMessage_text();
+                columns.endChange(slot);
+                addToAuthor(updated.getPosted_by(), slot);
+            } else {
+                columns.beginChange(slot);
+                columns.texts[slot] = updated.getMessage_text();
+                columns.endChange(slot);
+            }
+        }
+    }
+
+    @Override
+    public Message updateMessageText(int id, String messageText) {
+        synchronized (writeLock) {
+            Message updated = backing.updateMessageText(id, messageText);
+            int slot = index.find(id);
+            if (updated != null && slot >= 0) {
+                Columns columns = this.columns;
+                columns.beginChange(slot);
+                columns.texts[slot] = updated.getMessage_text();
+                columns.endChange(slot);
+            }
+            return updated;
+        }
+    }
+
+    @Override
+    public Message deleteMessageByID(int id) {
+        synchronized (writeLock) {
+            Message deleted = backing.deleteMessageByID(id);
+            int slot = index.find(id);
+            if (deleted != null && slot >= 0) {
+                Columns columns = this.columns;
+                index.remove(id);
+                removeFromAuthor(columns.postedBy[slot], slot);
+                columns.beginChange(slot);
+                columns.texts[slot] = null;
+                columns.endChange(slot);
+            }
+            return deleted;
+        }
+    }
+
+    /**
+     * Put a message in the next slot and index it. Callers hold the write lock.
+     */
+    private void add(Message message) {
+        Columns columns = this.columns;
+        int slot = columns.size;
+        if (slot == columns.ids.length) {
+            columns = columns.grow();
+            this.columns = columns;
+        }
+        columns.ids[slot] = message.getMessage_id();
+        columns.postedBy[slot] = message.getPosted_by();
+        columns.times[slot] = message.getTime_posted_epoch();
+        columns.texts[slot] = message.getMessage_text();
+        columns.size = slot + 1;
+        if (message.getMessage_id() <= lastId) {
+            slotsInIdOrder = false;
+        }
+        lastId = Math.max(lastId, message.getMessage_id());
+
+        if (!index.put(message.getMessage_id(), slot)) {
+            IdIndex grown = index.rebuild();
+            grown.put(message.getMessage_id(), slot);
+            index = grown;
+        }
+        addToAuthor(message.getPosted_by(), slot);
+    }
+
+    private AuthorList authorList(int accountId) {
+        AuthorList[] authors = this.authors;
+        return accountId >= 0 && accountId < authors.length
+                ? (AuthorList) AUTHOR_LIST.getAcquire(authors, accountId) : null;
+    }
+
+    /**
+     * Add a slot to an account's list, in place if it sorts last and there is room, otherwise by publishing a copy.
+     */
+    private void addToAuthor(int accountId, int slot) {
+        if (accountId < 0) {
+            return;
+        }
+        AuthorList[] authors = this.authors;
+        if (accountId >= authors.length) {
+            authors = Arrays.copyOf(authors, Math.max(accountId + 1, authors.length * 2));
+            this.authors = authors;
+        }
+        AuthorList list = (AuthorList) AUTHOR_LIST.getAcquire(authors, accountId);
+        Columns columns = this.columns;
+        if (list == null) {
+            list = new AuthorList(new int[4], 0);
+        }
+        int size = list.size;
+        if (size == 0 || columns.compare(list.slots[size - 1], columns.times[slot], columns.ids[slot]) < 0) {
+            if (size < list.slots.length) {
+                list.slots[size] = slot;
+                list.size = size + 1;
+                AUTHOR_LIST.setRelease(authors, accountId, list);
+                return;
+            }
+            int[] slots = Arrays.copyOf(list.slots, size * 2);
+            slots[size] = slot;
+            AUTHOR_LIST.setRelease(authors, accountId, new AuthorList(slots, size + 1));
+            return;
+        }
+        int position = 0;
+        while (position < size && columns.compare(list.slots[position], columns.times[slot], columns.ids[slot]) < 0) {
+            position++;
+        }
+        int[] slots = new int[Math.max(list.slots.length, size + 1)];
+        System.arraycopy(list.slots, 0, slots, 0, position);
+        slots[position] = slot;
+        System.arraycopy(list.slots, position, slots, position + 1, size - position);
+        AUTHOR_LIST.setRelease(authors, accountId, new AuthorList(slots, size + 1));
+    }
+
+    private void removeFromAuthor(int accountId, int slot) {
+        AuthorList list = authorList(accountId);
+        if (list == null) {
+            return;
+        }
+        int size = list.size;
+        int[] slots = new int[list.slots.length];
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (list.slots[i] != slot) {
+                slots[kept++] = list.slots[i];
+            }
+        }
+        AUTHOR_LIST.setRelease(authors, accountId, new AuthorList(slots, kept));
+    }
+
+    /**
+     * The message columns, by slot. Slots below size are filled in; a slot with no text is a deleted message.
+     */
+    private static final class Columns {
+        final int[] ids;
+        final int[] postedBy;
+        final long[] times;
+        final String[] texts;
+        /** Per slot, odd while the writer is changing the slot in place. */
+        final int[] versions;
+        volatile int size;
+
+        Columns(int capacity) {
+            this(new int[capacity], new int[capacity], new long[capacity], new String[capacity], new int[capacity], 0);
+        }
+
+        Columns(int[] ids, int[] postedBy, long[] times, String[] texts, int[] versions, int size) {
+            this.ids = ids;
+            this.postedBy = postedBy;
+            this.times = times;
+            this.texts = texts;
+            this.versions = versions;
+            this.size = size;
+        }
+
+        Columns grow() {
+            int capacity = ids.length * 2;
+            return new Columns(Arrays.copyOf(ids, capacity), Arrays.copyOf(postedBy, capacity),
+                    Arrays.copyOf(times, capacity), Arrays.copyOf(texts, capacity), Arrays.copyOf(versions, capacity),
+                    size);
+        }
+
+        /**
+         * Start changing a filled-in slot; readers of the slot wait until endChange.
+         */
+        void beginChange(int slot) {
+            SLOT_VERSION.setOpaque(versions, slot, versions[slot] + 1);
+            VarHandle.releaseFence();
+        }
+
+        void endChange(int slot) {
+            SLOT_VERSION.setRelease(versions, slot, versions[slot] + 1);
+        }
+
+        /**
+         * @return the message in the slot, or null if it has been deleted
+         */
+        Message read(int slot) {
+            if (slot >= size) {
+                return null;
+            }
+            while (true) {
+                int version = (int) SLOT_VERSION.getAcquire(versions, slot);
+                if ((version & 1) == 0) {
+                    int postedBy = this.postedBy[slot];
+                    long time = times[slot];
+                    String text = texts[slot];
+                    VarHandle.acquireFence();
+                    if ((int) SLOT_VERSION.getOpaque(versions, slot) == version) {
+                        return text == null ? null : new Message(ids[slot], postedBy, text, time);
+                    }
+                }
+                Thread.onSpinWait();
+            }
+        }
+
+        /**
+         * Compare the message in the slot with the (time, message ID) position given.
+         */
+        int compare(int slot, long time, int id) {
+            int byTime = Long.compare(times[slot], time);
+            return byTime != 0 ? byTime : Integer.compare(ids[slot], id);
+        }
+    }
+
+    /**
+     * Open-addressing hash table, with linear probing, from message ID to slot.
+     */
+    private static final class IdIndex {
+        final long[] entries;
+        final int mask;
+        /** Entries that are not empty, including tombstones. Written only under the write lock. */
+        int used;
+        volatile int live;
+
+        IdIndex(int capacity) {
+            entries = new long[capacity];
+            mask = capacity - 1;
+        }
+
+        int find(int id) {
+            for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+                long entry = (long) INDEX_ENTRY.getAcquire(entries, i);
+                if (entry == 0) {
+                    return -1;
+                }
+                if (entry != TOMBSTONE && (int) (entry >>> 32) == id) {
+                    return (int) entry;
+                }
+            }
+        }
+
+        /**
+         * @return false, without adding the entry, if the table is too full and must be rebuilt first
+         */
+        boolean put(int id, int slot) {
+            if ((used + 1) * 4L > entries.length * 3L) {
+                return false;
+            }
+            int i = hash(id) & mask;
+            while (entries[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            INDEX_ENTRY.setRelease(entries, i, ((long) id << 32) | slot);
+            used++;
+            live = live + 1;
+            return true;
+        }
+
+        void remove(int id) {
+            for (int i = hash(id) & mask; entries[i] != 0; i = (i + 1) & mask) {
+                if (entries[i] != TOMBSTONE && (int) (entries[i] >>> 32) == id) {
+                    INDEX_ENTRY.setRelease(entries, i, TOMBSTONE);
+                    live = live - 1;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return a copy of this table without its tombstones, twice as large if it is at least half full of live
+         *         entries
+         */
+        IdIndex rebuild() {
+            IdIndex rebuilt = new IdIndex(live * 2 >= entries.length ? entries.length * 2 : entries.length);
+            for (long entry : entries) {
+                if (entry != 0 && entry != TOMBSTONE) {
+                    rebuilt.put((int) (entry >>> 32), (int) entry);
+                }
+            }
+            return rebuilt;
+        }
+
+        private static int hash(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * The slots of one account's messages, sorted by time posted then message ID. Only the writer appends in place,
+     * past size; any other change publishes a new list.
+     */
+    private static final class AuthorList {
+        final int[] slots;
+        volatile int size;
+
+        AuthorList(int[] slots, int size) {
+            this.slots = slots;
+            this.size = size;
+        }
+    }
+}
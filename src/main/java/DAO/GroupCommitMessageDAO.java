@@ -0,0 +1,289 @@
+package DAO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Model.Message;
+
+/**
+ * The GroupCommitMessageDAO class commits concurrent single-message inserts together. insertMessage queues the message
+ * and waits; one committer thread takes whatever is queued, waiting up to maxDelayMillis after the first message for
+ * more to arrive and taking no more than maxRows, and adds them all in one batched transaction through
+ * insertMessages. Each caller gets its message back, with its new message ID, only once that transaction has
+ * committed, so a returned message can be read straight away just as before; what changes is that many inserts share
+ * one commit, and its flush to disk, instead of paying for one each.
+ *
+ * insertMessages adds all of a batch or none of it, so a batch refused as a whole (e.g. because one message's
+ * posted_by does not refer to an account) is retried a message at a time, and only the messages that cannot be added
+ * get null. Every other operation, including bulk inserts, goes straight to the backing repository.
+ *
+ * Callers wait on their own threads, so under the controller no more inserts can be grouped than there are write
+ * bulkhead threads.
+ */
+public class GroupCommitMessageDAO implements MessageRepository, Closeable {
+    /**
+     * Queued by close() behind the last message, to stop the committer once everything before it is committed.
+     */
+    private static final PendingInsert CLOSE = new PendingInsert(null);
+
+    private final MessageRepository backing;
+    private final int maxRows;
+    private final long maxDelayNanos;
+    private final BlockingQueue<PendingInsert> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    /** Set, under the queue's lock, before CLOSE is queued; no message is queued after it. */
+    private boolean closed;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    /**
+     * @param maxRows most messages committed in one transaction, at least 1
+     * @param maxDelayMillis longest a message waits for others to commit with; 0 commits whatever has queued up while
+     *        the previous transaction ran
+     */
+    public GroupCommitMessageDAO(MessageRepository backing, int maxRows, long maxDelayMillis) {
+        if (maxRows < 1 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("invalid group commit: maxRows=" + maxRows
+                    + ", maxDelayMillis=" + maxDelayMillis);
+        }
+        this.backing = backing;
+        this.maxRows = maxRows;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        committer = new Thread(this::commitLoop, "group-commit");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * @return how many transactions and messages the committer has committed
+     */
+    public Stats getStats() {
+        return new Stats(batches.get(), rows.get(), retries.get());
+    }
+
+    /**
+     * Queue the message to be added in the next group commit.
+     *
+     * @return completed with the message as added, or with null if it could not be added, once it is committed
+     */
+    public CompletableFuture<Message> submit(Message message) {
+        PendingInsert pending = new PendingInsert(message);
+        synchronized (queue) {
+            if (closed) {
+                pending.result.complete(null);
+            } else {
+                queue.add(pending);
+            }
+        }
+        return pending.result;
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        try {
+            return submit(message).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            System.out.println(e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        return backing.getAllMessages();
+    }
+
+    @Override
+    public Message getMessageByID(int id) {
+        return backing.getMessageByID(id);
+    }
+
+    @Override
+    public List<Message> getMessagesByAccountID(int id) {
+        return backing.getMessagesByAccountID(id);
+    }
+
+    @Override
+    public void streamAllMessages(MessageSink sink) throws IOException {
+        backing.streamAllMessages(sink);
+    }
+
+    @Override
+    public void streamMessagesByAccountID(int id, MessageSink sink) throws IOException {
+        backing.streamMessagesByAccountID(id, sink);
+    }
+
+    @Override
+    public List<Message> getMessagesAfter(int afterMessageId, int limit) {
+        return backing.getMessagesAfter(afterMessageId, limit);
+    }
+
+    @Override
+    public List<Message> getMessagesByAccountIDAfter(int id, long afterTime, int afterMessageId, int limit) {
+        return backing.getMessagesByAccountIDAfter(id, afterTime, afterMessageId, limit);
+    }
+
+    @Override
+    public List<Message> getRecentMessagesByAccountID(int id, int limit) {
+        return backing.getRecentMessagesByAccountID(id, limit);
+    }
+
+    @Override
+    public List<Message> insertMessages(List<Message> messages, int chunkSize) {
+        return backing.insertMessages(messages, chunkSize);
+    }
+
+    @Override
+    public void updateMessage(int id, Message message) {
+        backing.updateMessage(id, message);
+    }
+
+    @Override
+    public Message updateMessageText(int id, String messageText) {
+        return backing.updateMessageText(id, messageText);
+    }
+
+    @Override
+    public Message deleteMessageByID(int id) {
+        return backing.deleteMessageByID(id);
+    }
+
+    /**
+     * Commit what is still queued, stop the committer, and close the backing repository if it can be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(CLOSE);
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (backing instanceof Closeable) {
+            ((Closeable) backing).close();
+        }
+    }
+
+    private void commitLoop() {
+        List<PendingInsert> batch = new ArrayList<>(maxRows);
+        boolean closing = false;
+        while (!closing) {
+            try {
+                PendingInsert next = queue.take();
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (next != null) {
+                    if (next == CLOSE) {
+                        closing = true;
+                        break;
+                    }
+                    batch.add(next);
+                    if (batch.size() == maxRows) {
+                        break;
+                    }
+                    next = queue.poll();
+                    if (next == null) {
+                        next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                //nothing interrupts the committer but the JVM shutting down; commit what has been taken
+                closing = closed;
+            }
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void commit(List<PendingInsert> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            List<Message> messages = new ArrayList<>(batch.size());
+            for (PendingInsert pending : batch) {
+                messages.add(pending.message);
+            }
+            List<Message> inserted = batch.size() == 1 ? null : backing.insertMessages(messages, messages.size());
+            if (inserted != null) {
+                batches.incrementAndGet();
+                rows.addAndGet(inserted.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).result.complete(inserted.get(i));
+                }
+                return;
+            }
+            if (batch.size() > 1) {
+                retries.incrementAndGet();
+            }
+            for (PendingInsert pending : batch) {
+                Message message = backing.insertMessage(pending.message);
+                batches.incrementAndGet();
+                if (message != null) {
+                    rows.incrementAndGet();
+                }
+                pending.result.complete(message);
+            }
+        } catch (Throwable e) {
+            //fail this batch, even on an Error, rather than let the committer die and leave every caller waiting
+            for (PendingInsert pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class PendingInsert {
+        final Message message;
+        final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        PendingInsert(Message message) {
+            this.message = message;
+        }
+    }
+
+    public static class Stats {
+        private final long batches;
+        private final long rows;
+        private final long retries;
+
+        Stats(long batches, long rows, long retries) {
+            this.batches = batches;
+            this.rows = rows;
+            this.retries = retries;
+        }
+
+        /** Transactions committed. */
+        public long getBatches() { return batches; }
+        /** Messages added. */
+        public long getRows() { return rows; }
+        /** Batches refused as a whole and retried a message at a time. */
+        public long getRetries() { return retries; }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "batches=" + batches +
+                    ", rows=" + rows +
+                    ", retries=" + retries +
+                    '}';
+        }
+    }
+}
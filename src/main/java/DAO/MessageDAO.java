@@ -2,12 +2,53 @@ package DAO;
 
 import Model.Message;
 import Util.ConnectionUtil;
+import Util.QueryMetrics;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 
-public class MessageDAO {
+public class MessageDAO implements MessageRepository {
+
+    /**
+     * Rows fetched at a time when streaming a result set to a MessageSink.
+     */
+    static final int STREAM_FETCH_SIZE = Integer.getInteger("stream.fetchSize", 500);
+
+    /*
+     * SQL run by this DAO. Kept together so the statements can be checked against the schema's indexes.
+     */
+    public static final String SELECT_ALL_MESSAGES = "select * from message";
+    public static final String SELECT_MESSAGE_BY_ID = "select * from message where message_id = ?";
+    public static final String SELECT_MESSAGES_BY_ACCOUNT_ID =
+            "select * from message where posted_by=? order by time_posted_epoch, message_id";
+    public static final String SELECT_MESSAGES_AFTER =
+            "select * from message where message_id > ? order by message_id limit ?";
+    // the >= bound lets the (posted_by, time_posted_epoch) index be used as a range, the or breaks ties
+    public static final String SELECT_MESSAGES_BY_ACCOUNT_ID_AFTER =
+            "select * from message where posted_by = ? and time_posted_epoch >= ? "
+            + "and (time_posted_epoch > ? or message_id > ?) "
+            + "order by time_posted_epoch, message_id limit ?";
+    public static final String SELECT_RECENT_MESSAGES_BY_ACCOUNT_ID =
+            "select * from message where posted_by = ? "
+            + "order by time_posted_epoch desc, message_id desc limit ?";
+    public static final String INSERT_MESSAGE =
+            "insert into message (posted_by, message_text, time_posted_epoch) values (?,?,?)";
+    public static final String UPDATE_MESSAGE =
+            "update message set posted_by=?, message_text=?, time_posted_epoch=? where message_id=?;";
+    // data-change delta tables return the changed row from the same statement that changes it
+    public static final String UPDATE_MESSAGE_TEXT =
+            "select * from final table (update message set message_text = ? where message_id = ?)";
+    public static final String DELETE_MESSAGE_BY_ID =
+            "select * from old table (delete from message where message_id = ?)";
+    // lazy execution makes H2 produce rows as they are fetched instead of building the whole result first
+    private static final String LAZY_ON = "set lazy_query_execution true";
+    private static final String LAZY_OFF = "set lazy_query_execution false";
+
+    static {
+        QueryMetrics.nameQueries(MessageDAO.class);
+    }
 
     /**
      * Retrieve all messages from the message table
@@ -16,12 +57,14 @@ public class MessageDAO {
      */
     public List<Message> getAllMessages() {
         Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
         List<Message> messages = new ArrayList<>();
         try {
-            String sql = "select * from message";
+            String sql = SELECT_ALL_MESSAGES;
 
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            ResultSet rs = preparedStatement.executeQuery();
+            preparedStatement = connection.prepareStatement(sql);
+            rs = preparedStatement.executeQuery();
             while(rs.next()){
                 Message message = new Message(rs.getInt("message_id"), rs.getInt("posted_by"),
                         rs.getString("message_text"), rs.getLong("time_posted_epoch"));
@@ -29,6 +72,8 @@ public class MessageDAO {
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(rs, preparedStatement, connection);
         }
         return messages;        
     }
@@ -41,13 +86,15 @@ public class MessageDAO {
      */
     public Message getMessageByID(int id)  {
         Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
         try {
-            String sql = "select * from message where message_id = ?";
+            String sql = SELECT_MESSAGE_BY_ID;
             
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement = connection.prepareStatement(sql);
             preparedStatement.setInt(1, id);
 
-            ResultSet rs = preparedStatement.executeQuery();
+            rs = preparedStatement.executeQuery();
             while(rs.next()){
                 Message message = new Message(rs.getInt("message_id"), rs.getInt("posted_by"),
                 rs.getString("message_text"), rs.getLong("time_posted_epoch"));
@@ -56,25 +103,29 @@ public class MessageDAO {
 
         }   catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(rs, preparedStatement, connection);
         }
         return null;
     }
 
     /**
-     * Retrieve all messages posted by an account ID provided
+     * Retrieve all messages posted by an account ID provided, oldest first
      * 
      * @param id an Account ID
      * @return all messages posted by the account ID
      */
     public List<Message> getMessagesByAccountID(int id)  {
         Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
         List<Message> messages = new ArrayList<>();
         try {
-            String sql = "select * from message where posted_by=?";
+            String sql = SELECT_MESSAGES_BY_ACCOUNT_ID;
 
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement = connection.prepareStatement(sql);
             preparedStatement.setInt(1, id);
-            ResultSet rs = preparedStatement.executeQuery();
+            rs = preparedStatement.executeQuery();
             while(rs.next()){
                 Message message = new Message(rs.getInt("message_id"), rs.getInt("posted_by"),
                         rs.getString("message_text"), rs.getLong("time_posted_epoch"));
@@ -82,41 +133,297 @@ public class MessageDAO {
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(rs, preparedStatement, connection);
         }
         return messages; 
     }
 
 
+    /**
+     * Read every message from the message table, handing each one to the sink as it is read rather than collecting
+     * them into a list. Rows are fetched STREAM_FETCH_SIZE at a time, so memory use does not grow with the table.
+     * 
+     * @param sink receives each message in turn
+     * @throws IOException if the sink fails or the database cannot be read; reading stops at that row
+     */
+    public void streamAllMessages(MessageSink sink) throws IOException {
+        streamMessages(SELECT_ALL_MESSAGES, null, sink);
+    }
+
+    /**
+     * Read every message posted by an account, oldest first, handing each one to the sink as it is read.
+     * 
+     * @param id an Account ID
+     * @param sink receives each message in turn
+     * @throws IOException if the sink fails or the database cannot be read; reading stops at that row
+     */
+    public void streamMessagesByAccountID(int id, MessageSink sink) throws IOException {
+        streamMessages(SELECT_MESSAGES_BY_ACCOUNT_ID, id, sink);
+    }
+
+    private void streamMessages(String sql, Integer accountId, MessageSink sink) throws IOException {
+        Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        boolean lazy = false;
+        try {
+            setLazyExecution(connection, LAZY_ON);
+            lazy = true;
+
+            preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+            if (accountId != null) {
+                preparedStatement.setInt(1, accountId);
+            }
+            rs = preparedStatement.executeQuery();
+            while(rs.next()){
+                sink.accept(new Message(rs.getInt("message_id"), rs.getInt("posted_by"),
+                        rs.getString("message_text"), rs.getLong("time_posted_epoch")));
+            }
+        }catch(SQLException e){
+            //part of the list may already be sent, so the caller must abort the response rather than end it normally
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            ConnectionUtil.close(rs);
+            if (preparedStatement != null) {
+                //the statement goes back to the connection's statement cache, where other queries should not stream
+                try {
+                    preparedStatement.setFetchSize(0);
+                } catch (SQLException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+            ConnectionUtil.close(preparedStatement);
+            if (lazy) {
+                try {
+                    setLazyExecution(connection, LAZY_OFF);
+                } catch (SQLException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+            ConnectionUtil.close(connection);
+        }
+    }
+
+    private void setLazyExecution(Connection connection, String sql) throws SQLException {
+        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        try {
+            preparedStatement.execute();
+        } finally {
+            preparedStatement.close();
+        }
+    }
+
+    /**
+     * Retrieve one page of messages ordered by message ID, starting after the message ID provided.
+     * The query seeks straight to the first row after the cursor, so every page costs the same no matter how deep
+     * into the table it is.
+     * 
+     * @param afterMessageId return only messages with a larger message ID (0 for the first page)
+     * @param limit the maximum number of messages to return
+     * @return up to limit messages following afterMessageId
+     */
+    public List<Message> getMessagesAfter(int afterMessageId, int limit) {
+        Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        List<Message> messages = new ArrayList<>();
+        try {
+            String sql = SELECT_MESSAGES_AFTER;
+
+            preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, afterMessageId);
+            preparedStatement.setInt(2, limit);
+            rs = preparedStatement.executeQuery();
+            while(rs.next()){
+                Message message = new Message(rs.getInt("message_id"), rs.getInt("posted_by"),
+                        rs.getString("message_text"), rs.getLong("time_posted_epoch"));
+                messages.add(message);
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(rs, preparedStatement, connection);
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieve one page of the messages posted by an account, ordered by time posted (then message ID for messages
+     * posted at the same time), starting after the (time, message ID) position provided.
+     * 
+     * @param id an Account ID
+     * @param afterTime time_posted_epoch of the last message on the previous page
+     * @param afterMessageId message_id of the last message on the previous page
+     * @param limit the maximum number of messages to return
+     * @return up to limit messages posted by the account following the position provided
+     */
+    public List<Message> getMessagesByAccountIDAfter(int id, long afterTime, int afterMessageId, int limit) {
+        Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        List<Message> messages = new ArrayList<>();
+        try {
+            String sql = SELECT_MESSAGES_BY_ACCOUNT_ID_AFTER;
+
+            preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, id);
+            preparedStatement.setLong(2, afterTime);
+            preparedStatement.setLong(3, afterTime);
+            preparedStatement.setInt(4, afterMessageId);
+            preparedStatement.setInt(5, limit);
+            rs = preparedStatement.executeQuery();
+            while(rs.next()){
+                Message message = new Message(rs.getInt("message_id"), rs.getInt("posted_by"),
+                        rs.getString("message_text"), rs.getLong("time_posted_epoch"));
+                messages.add(message);
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(rs, preparedStatement, connection);
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieve the most recent messages posted by an account, newest first (by time posted, then message ID for
+     * messages posted at the same time).
+     * 
+     * @param id an Account ID
+     * @param limit the maximum number of messages to return
+     * @return up to limit of the account's most recent messages, newest first
+     */
+    public List<Message> getRecentMessagesByAccountID(int id, int limit) {
+        Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        List<Message> messages = new ArrayList<>();
+        try {
+            String sql = SELECT_RECENT_MESSAGES_BY_ACCOUNT_ID;
+
+            preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, id);
+            preparedStatement.setInt(2, limit);
+            rs = preparedStatement.executeQuery();
+            while(rs.next()){
+                Message message = new Message(rs.getInt("message_id"), rs.getInt("posted_by"),
+                        rs.getString("message_text"), rs.getLong("time_posted_epoch"));
+                messages.add(message);
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(rs, preparedStatement, connection);
+        }
+        return messages;
+    }
+
     /**
      * Add a message record into the database which matches the values contained in the message object.
      * Values provided are posted_by, message_text, and time_posted_epoch. The message_id is 
-     * auto-generated by the database.
+     * auto-generated by the database. The foreign key on posted_by rejects messages from accounts that do not exist,
+     * so callers do not need to look the account up first.
      * 
      * @param message message object modeling the message to be created
-     * @return the message object that has been newly-created
+     * @return the message object that has been newly-created, or null if it could not be created (for example
+     *         because posted_by does not refer to an existing account)
      */
     public Message insertMessage(Message message) {
         Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
         try {
-            String sql = "insert into message (posted_by, message_text, time_posted_epoch) values (?,?,?)";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            String sql = INSERT_MESSAGE;
+            preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
             preparedStatement.setInt(1,message.getPosted_by());
             preparedStatement.setString(2,message.getMessage_text());
             preparedStatement.setLong(3, message.getTime_posted_epoch());
 
             preparedStatement.executeUpdate();
-            ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
-            if(pkeyResultSet.next()){
-                int generated_message_id = (int) pkeyResultSet.getLong(1);
+            rs = preparedStatement.getGeneratedKeys();
+            if(rs.next()){
+                int generated_message_id = (int) rs.getLong(1);
                 return new Message(generated_message_id, message.getPosted_by(), message.getMessage_text(), 
                     message.getTime_posted_epoch());
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(rs, preparedStatement, connection);
         }
         return null;
     }
 
+    /**
+     * Add many message records in one transaction, sending the inserts to the database in JDBC batches of chunkSize
+     * rows. Either every message is added or, if any insert fails, none are.
+     * 
+     * @param messages message objects modeling the messages to be created
+     * @param chunkSize number of inserts sent to the database per batch
+     * @return the newly-created messages, in the order given, or null if the batch was rolled back
+     */
+    public List<Message> insertMessages(List<Message> messages, int chunkSize) {
+        Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        List<Message> inserted = new ArrayList<>(messages.size());
+        try {
+            String sql = INSERT_MESSAGE;
+            connection.setAutoCommit(false);
+            preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            int batched = 0;
+            for (Message message : messages) {
+                preparedStatement.setInt(1,message.getPosted_by());
+                preparedStatement.setString(2,message.getMessage_text());
+                preparedStatement.setLong(3, message.getTime_posted_epoch());
+                preparedStatement.addBatch();
+                if (++batched == chunkSize) {
+                    executeInsertBatch(preparedStatement, messages, inserted);
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                executeInsertBatch(preparedStatement, messages, inserted);
+            }
+            if (inserted.size() != messages.size()) {
+                throw new SQLException("expected " + messages.size() + " generated keys, got " + inserted.size());
+            }
+            connection.commit();
+            return inserted;
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackFailure) {
+                System.out.println(rollbackFailure.getMessage());
+            }
+        } finally {
+            ConnectionUtil.close(preparedStatement, connection);
+        }
+        return null;
+    }
+
+    /**
+     * Send the batched inserts and pair each generated message_id with the message it was generated for.
+     * Messages are matched up by position: the batch holds the messages after the ones already inserted.
+     */
+    private void executeInsertBatch(PreparedStatement preparedStatement, List<Message> messages,
+            List<Message> inserted) throws SQLException {
+        preparedStatement.executeBatch();
+        ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
+        try {
+            while(pkeyResultSet.next()){
+                Message message = messages.get(inserted.size());
+                int generated_message_id = (int) pkeyResultSet.getLong(1);
+                inserted.add(new Message(generated_message_id, message.getPosted_by(), message.getMessage_text(),
+                    message.getTime_posted_epoch()));
+            }
+        } finally {
+            pkeyResultSet.close();
+        }
+    }
+
     /**
      * Update the message identified by the message id to the values contained in the message object
      * 
@@ -126,9 +433,10 @@ public class MessageDAO {
      */
     public void updateMessage(int id, Message message) {
         Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
         try {
-            String sql = "update message set posted_by=?, message_text=?, time_posted_epoch=? where message_id=?;";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            String sql = UPDATE_MESSAGE;
+            preparedStatement = connection.prepareStatement(sql);
 
             preparedStatement.setInt(1,message.getPosted_by());
             preparedStatement.setString(2,message.getMessage_text());
@@ -138,44 +446,68 @@ public class MessageDAO {
             preparedStatement.executeUpdate();
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(preparedStatement, connection);
         }        
     }
 
     /**
-     * Delete a pecific message using its message ID
+     * Update the text of the message identified by the message id, returning the full updated message from the same
+     * statement rather than reading it back with a second query.
+     * 
+     * @param id an message ID of the message to be updated
+     * @param messageText the new text of the message
+     * @return the updated message object, or null if no message has the message ID
+     */
+    public Message updateMessageText(int id, String messageText) {
+        Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        try {
+            String sql = UPDATE_MESSAGE_TEXT;
+            preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setString(1, messageText);
+            preparedStatement.setInt(2, id);
+
+            rs = preparedStatement.executeQuery();
+            if(rs.next()){
+                return new Message(rs.getInt("message_id"), rs.getInt("posted_by"),
+                        rs.getString("message_text"), rs.getLong("time_posted_epoch"));
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(rs, preparedStatement, connection);
+        }
+        return null;
+    }
+
+    /**
+     * Delete a pecific message using its message ID. The deleted row is returned by the delete statement itself,
+     * so there is no separate lookup beforehand.
      * 
      * @param id an message ID (matching the message object to be deleted)
-     * @return the deleted message object matching the message ID
+     * @return the deleted message object matching the message ID, or null if there was no such message
      */
     public Message deleteMessageByID(int id)  {
         Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
         try {
-            String sql = "delete from message where message_id = ?";
+            String sql = DELETE_MESSAGE_BY_ID;
             
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement = connection.prepareStatement(sql);
             preparedStatement.setInt(1, id);
 
-            Message deletedMessage = getMessageByID(id); //get deleted message before executing delete
-            // ^ this may not be necessary if pkeyresultset returns the deleted fields
-            //                 !!!!! ^^^^
-            preparedStatement.executeUpdate(); //execute delete
-
-            //ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
-            /**
-             * if(pkeyResultSet.next()){
-                /**
-                 * int deleted_message_id = (int) pkeyResultSet.getInt(1);
-                int deleted_posted_by = pkeyResultSet.getInt(2);
-                String deleted_message_text = pkeyResultSet.getString(3);
-                long deleted_time_posted_epoch = pkeyResultSet.getLong(4);
-                return new Message(deleted_message_id, deleted_posted_by, deleted_message_text, 
-                    deleted_time_posted_epoch);
-             }
-             */
-            return deletedMessage;
-
+            rs = preparedStatement.executeQuery(); //execute delete, reading back the deleted row
+            if(rs.next()){
+                return new Message(rs.getInt("message_id"), rs.getInt("posted_by"),
+                        rs.getString("message_text"), rs.getLong("time_posted_epoch"));
+            }
         }   catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.close(rs, preparedStatement, connection);
         }
         return null;
     }
@@ -0,0 +1,87 @@
+package DAO;
+
+import java.io.IOException;
+import java.util.List;
+
+import Model.Message;
+
+/**
+ * The operations MessageService needs from wherever messages are kept. MessageDAO keeps them in the database;
+ * ColumnarMessageDAO also keeps them all in memory and answers reads from there. The message.store property picks one
+ * at startup (see MessageService).
+ */
+public interface MessageRepository {
+    /**
+     * @return all messages, by message ID
+     */
+    List<Message> getAllMessages();
+
+    /**
+     * @return the message with the message ID, or null if there is none
+     */
+    Message getMessageByID(int id);
+
+    /**
+     * @return all messages posted by the account, oldest first
+     */
+    List<Message> getMessagesByAccountID(int id);
+
+    /**
+     * Hand every message to the sink in turn, without building a list of all of them.
+     *
+     * @throws IOException if the sink fails or the messages cannot be read; no more messages are handed to it
+     */
+    void streamAllMessages(MessageSink sink) throws IOException;
+
+    /**
+     * Hand every message posted by the account to the sink in turn, oldest first.
+     *
+     * @throws IOException if the sink fails or the messages cannot be read; no more messages are handed to it
+     */
+    void streamMessagesByAccountID(int id, MessageSink sink) throws IOException;
+
+    /**
+     * @return up to limit messages with a message ID above afterMessageId, by message ID
+     */
+    List<Message> getMessagesAfter(int afterMessageId, int limit);
+
+    /**
+     * @return up to limit messages posted by the account after the (time posted, message ID) position given, oldest
+     *         first
+     */
+    List<Message> getMessagesByAccountIDAfter(int id, long afterTime, int afterMessageId, int limit);
+
+    /**
+     * @return up to limit of the account's most recent messages, newest first
+     */
+    List<Message> getRecentMessagesByAccountID(int id, int limit);
+
+    /**
+     * @return the message as added, with its new message ID, or null if it could not be added (for example because
+     *         posted_by does not refer to an existing account)
+     */
+    Message insertMessage(Message message);
+
+    /**
+     * Add all of the messages or, if any cannot be added, none of them.
+     *
+     * @param chunkSize number of messages sent to the database at a time
+     * @return the messages as added, in the order given, or null if none were added
+     */
+    List<Message> insertMessages(List<Message> messages, int chunkSize);
+
+    /**
+     * Set the posted_by, message_text and time_posted_epoch of the message with the message ID, if there is one.
+     */
+    void updateMessage(int id, Message message);
+
+    /**
+     * @return the message as updated, or null if there is no message with the message ID
+     */
+    Message updateMessageText(int id, String messageText);
+
+    /**
+     * @return the message as it was before it was deleted, or null if there is no message with the message ID
+     */
+    Message deleteMessageByID(int id);
+}
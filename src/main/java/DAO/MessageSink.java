@@ -0,0 +1,18 @@
+package DAO;
+
+import java.io.IOException;
+
+import Model.Message;
+
+/**
+ * Receives messages one at a time as a DAO reads them from a result set, so a caller can write each message out
+ * (for example to an HTTP response) without the DAO building a list of every row first.
+ */
+@FunctionalInterface
+public interface MessageSink {
+    /**
+     * @param message the next message read from the database
+     * @throws IOException if the message could not be written onward; the DAO stops reading and rethrows it
+     */
+    void accept(Message message) throws IOException;
+}
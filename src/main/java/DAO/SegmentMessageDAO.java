@@ -0,0 +1,748 @@
+package DAO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.zip.CRC32;
+
+import Model.Message;
+
+/**
+ * The SegmentMessageDAO class keeps messages in files of its own instead of the database: an append-only log of
+ * records in memory-mapped segment files, with the indexes needed to answer every read kept in memory. It assigns
+ * message IDs itself; accounts stay in the database, and posted_by is checked against them with the predicate it is
+ * given.
+ *
+ * Every change appends a record and never touches an earlier one. A record is laid out as
+ *
+ *     crc (int) | length (int) | type (byte) | message_id (int) | posted_by (int) | time_posted_epoch (long)
+ *       | text length (short) | message_text (UTF-8)
+ *
+ * where the CRC-32 covers everything after itself. An insert or update appends a PUT record holding the whole new
+ * version of the message; a delete appends a DELETE record, a tombstone, holding only the message ID. The in-memory
+ * index from message ID to the location of its latest PUT (segment number and offset) is what makes a record live.
+ *
+ * Segments are SEGMENT_BYTES long files named by a rising number; when a record does not fit in the active segment a
+ * new one is started. On open every segment is replayed in order to rebuild the indexes. Records are written before
+ * their CRC, so a crash can only leave a torn record at the tail of the newest segment; replay stops at the first
+ * record whose CRC does not match and zeroes the rest of the segment, and the next append overwrites it. Mapped pages
+ * reach the disk when the OS writes them back, or every SYNC_INTERVAL_MILLIS when they are forced (0 forces after every
+ * write).
+ *
+ * A background thread compacts the oldest segment once less than COMPACTION_LIVE_RATIO of its bytes are live records:
+ * it appends its live records again and deletes the file. Only the oldest segment is compacted, so a tombstone dropped
+ * with it can never have an older PUT left behind to bring back on replay. The one tombstone that is appended again is
+ * that of the highest message ID ever used, when that message is deleted, as replay takes the next ID from it.
+ *
+ * Readers take no locks: they look a location up in the index and decode the record from the mapped segment. Writers
+ * and the compactor are serialized by a lock.
+ */
+public class SegmentMessageDAO implements MessageRepository, Closeable {
+    /**
+     * Directory the segment files are kept in.
+     */
+    public static final String DIRECTORY = System.getProperty("message.segments.dir", "./segments");
+    /**
+     * Size of each segment file, in bytes.
+     */
+    public static final int SEGMENT_BYTES = Integer.getInteger("message.segments.segmentBytes", 64 * 1024 * 1024);
+    /**
+     * How often written segments are forced to disk, in milliseconds; 0 forces them after every write.
+     */
+    public static final long SYNC_INTERVAL_MILLIS = Long.getLong("message.segments.syncIntervalMillis", 1_000L);
+    /**
+     * How often the oldest segment is checked for compaction, in milliseconds; 0 leaves compaction to compact().
+     */
+    public static final long COMPACTION_INTERVAL_MILLIS =
+            Long.getLong("message.segments.compactionIntervalMillis", 10_000L);
+    /**
+     * The oldest segment is compacted once less than this share of its bytes are live records.
+     */
+    static final double COMPACTION_LIVE_RATIO = 0.5;
+
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    public static final int HEADER_BYTES = 4 + 4 + 1 + 4 + 4 + 8 + 2;
+    /**
+     * Longest a record can be: a message text has at most 254 chars, each at most 4 bytes in UTF-8.
+     */
+    static final int MAX_RECORD_BYTES = HEADER_BYTES + 254 * 4;
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long syncIntervalMillis;
+    private final IntPredicate accountExists;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final Object writeLock = new Object();
+    private final ScheduledExecutorService background;
+
+    private final ConcurrentHashMap<Integer, Segment> segments = new ConcurrentHashMap<>();
+    /**
+     * The location of the latest PUT record of each live message, by message ID.
+     */
+    private final ConcurrentSkipListMap<Integer, Long> locations = new ConcurrentSkipListMap<>();
+    /**
+     * The (time posted, message ID) of each live message, by posted_by.
+     */
+    private final ConcurrentHashMap<Integer, ConcurrentSkipListSet<TimelineKey>> timelines =
+            new ConcurrentHashMap<>();
+    private final CRC32 crc = new CRC32();
+    private final byte[] recordBytes = new byte[MAX_RECORD_BYTES];
+    private Segment active;
+    private int lastId;
+    private boolean dirty;
+    private volatile boolean closed;
+
+    /**
+     * Open the segments in DIRECTORY with the sizes and intervals configured by system properties.
+     */
+    public SegmentMessageDAO(IntPredicate accountExists) throws IOException {
+        this(Paths.get(DIRECTORY), SEGMENT_BYTES, SYNC_INTERVAL_MILLIS, COMPACTION_INTERVAL_MILLIS, accountExists);
+    }
+
+    /**
+     * Open the segments in directory, creating it if needed, and replay them.
+     *
+     * @param segmentBytes size of each new segment file, at least MAX_RECORD_BYTES
+     * @param accountExists whether an account ID refers to an existing account, checked before any posted_by is written
+     *        and outside the write lock, so it should be cheap (e.g. cached) and must stay true once it is true
+     * @throws IOException if the segments could not be read, or another SegmentMessageDAO has the directory open
+     */
+    public SegmentMessageDAO(Path directory, int segmentBytes, long syncIntervalMillis, long compactionIntervalMillis,
+            IntPredicate accountExists) throws IOException {
+        if (segmentBytes < MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("segmentBytes must be at least " + MAX_RECORD_BYTES);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.accountExists = accountExists;
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        lock = lockChannel.tryLock();
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException(directory + " is in use by another process");
+        }
+        try {
+            long start = System.nanoTime();
+            replay();
+            System.out.println("Loaded " + locations.size() + " messages from " + segments.size() + " segments in "
+                    + (System.nanoTime() - start) / 1_000_000 + "ms");
+        } catch (IOException | RuntimeException e) {
+            closeSegments();
+            throw e;
+        }
+        background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "segment-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (syncIntervalMillis > 0) {
+            background.scheduleWithFixedDelay(this::sync, syncIntervalMillis, syncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        if (compactionIntervalMillis > 0) {
+            background.scheduleWithFixedDelay(this::compactQuietly, compactionIntervalMillis,
+                    compactionIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the number of live messages
+     */
+    public int size() {
+        return locations.size();
+    }
+
+    /**
+     * @return the number of segment files
+     */
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        return getMessagesAfter(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Message getMessageByID(int id) {
+        while (true) {
+            Long location = locations.get(id);
+            if (location == null) {
+                return null;
+            }
+            Message message = read(location);
+            if (message != null) {
+                return message;
+            }
+            //the segment was compacted away after the lookup, so the message has a new location
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesByAccountID(int id) {
+        return getMessagesByAccountIDAfter(id, Long.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void streamAllMessages(MessageSink sink) throws IOException {
+        for (Integer id : locations.keySet()) {
+            Message message = getMessageByID(id);
+            if (message != null) {
+                sink.accept(message);
+            }
+        }
+    }
+
+    @Override
+    public void streamMessagesByAccountID(int id, MessageSink sink) throws IOException {
+        for (Message message : getMessagesByAccountID(id)) {
+            sink.accept(message);
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesAfter(int afterMessageId, int limit) {
+        List<Message> messages = new ArrayList<>(Math.min(limit, 1024));
+        Iterator<Integer> ids = locations.tailMap(afterMessageId, false).keySet().iterator();
+        while (ids.hasNext() && messages.size() < limit) {
+            Message message = getMessageByID(ids.next());
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public List<Message> getMessagesByAccountIDAfter(int id, long afterTime, int afterMessageId, int limit) {
+        ConcurrentSkipListSet<TimelineKey> timeline = timelines.get(id);
+        if (timeline == null) {
+            return new ArrayList<>();
+        }
+        return readTimeline(id, timeline.tailSet(new TimelineKey(afterTime, afterMessageId), false), limit);
+    }
+
+    @Override
+    public List<Message> getRecentMessagesByAccountID(int id, int limit) {
+        ConcurrentSkipListSet<TimelineKey> timeline = timelines.get(id);
+        if (timeline == null) {
+            return new ArrayList<>();
+        }
+        return readTimeline(id, timeline.descendingSet(), limit);
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        //accounts are never deleted, so the check need not hold up other writers
+        if (!accountExists.test(message.getPosted_by())) {
+            return null;
+        }
+        synchronized (writeLock) {
+            try {
+                return put(lastId + 1, message.getPosted_by(), message.getMessage_text(),
+                        message.getTime_posted_epoch());
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public List<Message> insertMessages(List<Message> messages, int chunkSize) {
+        for (Message message : messages) {
+            if (!accountExists.test(message.getPosted_by())) {
+                return null;
+            }
+        }
+        synchronized (writeLock) {
+            List<Message> inserted = new ArrayList<>(messages.size());
+            try {
+                for (Message message : messages) {
+                    inserted.add(put(lastId + 1, message.getPosted_by(), message.getMessage_text(),
+                            message.getTime_posted_epoch()));
+                }
+                return inserted;
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                //take back the part of the batch that was written, so none of it is kept
+                for (Message message : inserted) {
+                    deleteMessageByID(message.getMessage_id());
+                }
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void updateMessage(int id, Message message) {
+        if (!accountExists.test(message.getPosted_by())) {
+            return;
+        }
+        synchronized (writeLock) {
+            if (!locations.containsKey(id)) {
+                return;
+            }
+            try {
+                put(id, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public Message updateMessageText(int id, String messageText) {
+        synchronized (writeLock) {
+            Message message = getMessageByID(id);
+            if (message == null) {
+                return null;
+            }
+            try {
+                return put(id, message.getPosted_by(), messageText, message.getTime_posted_epoch());
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public Message deleteMessageByID(int id) {
+        synchronized (writeLock) {
+            Message message = getMessageByID(id);
+            if (message == null) {
+                return null;
+            }
+            try {
+                append(DELETE, id, 0, 0, "");
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                return null;
+            }
+            unindex(id, locations.remove(id), null);
+            return message;
+        }
+    }
+
+    /**
+     * Compact the oldest segment, and then the next, for as long as the oldest is mostly dead records.
+     *
+     * @return the number of segment files deleted
+     */
+    public int compact() throws IOException {
+        int compacted = 0;
+        while (!closed) {
+            Segment oldest;
+            synchronized (writeLock) {
+                oldest = oldestSegment();
+                if (oldest == null || oldest == active || oldest.liveBytes >= oldest.end * COMPACTION_LIVE_RATIO) {
+                    return compacted;
+                }
+            }
+            //move one record at a time, so writers wait for no more than one append
+            for (int offset = 0; offset < oldest.end; offset += oldest.buffer.getInt(offset + 4)) {
+                synchronized (writeLock) {
+                    long location = location(oldest.number, offset);
+                    int id = oldest.buffer.getInt(offset + 9);
+                    if (oldest.buffer.get(offset + 8) == PUT) {
+                        Long current = locations.get(id);
+                        if (current != null && current == location) {
+                            Message message = read(location);
+                            put(id, message.getPosted_by(), message.getMessage_text(),
+                                    message.getTime_posted_epoch());
+                        }
+                    } else if (id == lastId && !locations.containsKey(id)) {
+                        //the tombstone of the highest message ID is all that keeps replay from handing that ID out again
+                        append(DELETE, id, 0, 0, "");
+                    }
+                }
+            }
+            synchronized (writeLock) {
+                if (active != null) {
+                    //the moved records must be on disk before the only other copy of them is deleted
+                    active.buffer.force();
+                }
+                segments.remove(oldest.number);
+                oldest.channel.close();
+                Files.delete(oldest.path);
+            }
+            compacted++;
+        }
+        return compacted;
+    }
+
+    /**
+     * Force everything written to disk, stop the background thread and release the directory.
+     */
+    @Override
+    public void close() throws IOException {
+        background.shutdown();
+        try {
+            background.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (active != null) {
+                active.buffer.force();
+            }
+            closeSegments();
+        }
+    }
+
+    private void closeSegments() throws IOException {
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+        lock.release();
+        lockChannel.close();
+    }
+
+    /**
+     * Append a PUT record for the message and index it in place of any earlier version. Callers hold the write lock.
+     */
+    private Message put(int id, int postedBy, String text, long time) throws IOException {
+        long location = append(PUT, id, postedBy, time, text);
+        Message message = new Message(id, postedBy, text, time);
+        reindex(message, location);
+        return message;
+    }
+
+    /**
+     * Point message's ID at location, adding its timeline key before taking out the earlier version's, so that a
+     * timeline read running alongside never misses the message.
+     */
+    private void reindex(Message message, long location) {
+        Long previous = locations.put(message.getMessage_id(), location);
+        index(message, location);
+        unindex(message.getMessage_id(), previous, message);
+    }
+
+    private void index(Message message, long location) {
+        segments.get(segmentOf(location)).liveBytes += recordLength(location);
+        timelines.computeIfAbsent(message.getPosted_by(), account -> new ConcurrentSkipListSet<>())
+                .add(new TimelineKey(message.getTime_posted_epoch(), message.getMessage_id()));
+        lastId = Math.max(lastId, message.getMessage_id());
+    }
+
+    /**
+     * Take an earlier version of a message, at location, out of the timelines and the live byte counts. Its timeline
+     * key is left in place if replacement, the version taking over from it (null for a delete), has the same one.
+     */
+    private void unindex(int id, Long location, Message replacement) {
+        if (location == null) {
+            return;
+        }
+        Segment segment = segments.get(segmentOf(location));
+        int offset = offsetOf(location);
+        int postedBy = segment.buffer.getInt(offset + 13);
+        long time = segment.buffer.getLong(offset + 17);
+        segment.liveBytes -= segment.buffer.getInt(offset + 4);
+        if (replacement != null && replacement.getPosted_by() == postedBy
+                && replacement.getTime_posted_epoch() == time) {
+            return;
+        }
+        ConcurrentSkipListSet<TimelineKey> timeline = timelines.get(postedBy);
+        if (timeline != null) {
+            timeline.remove(new TimelineKey(time, id));
+        }
+    }
+
+    /**
+     * Write a record at the end of the active segment, starting a new segment if it does not fit. Callers hold the
+     * write lock.
+     *
+     * @return the location of the record
+     */
+    private long append(byte type, int id, int postedBy, long time, String text) throws IOException {
+        if (closed) {
+            throw new IOException("segment store is closed");
+        }
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_BYTES + textBytes.length;
+        if (length > MAX_RECORD_BYTES) {
+            throw new IOException("message text of " + textBytes.length + " bytes is too long to store");
+        }
+        if (active == null || active.end + length > segmentBytes) {
+            if (active != null) {
+                active.buffer.force();
+            }
+            active = createSegment(active == null ? 1 : active.number + 1);
+        }
+        ByteBuffer record = ByteBuffer.wrap(recordBytes, 0, length);
+        record.putInt(0).putInt(length).put(type).putInt(id).putInt(postedBy).putLong(time)
+                .putShort((short) textBytes.length).put(textBytes);
+        crc.reset();
+        crc.update(recordBytes, 4, length - 4);
+
+        //the CRC goes in last, so a record is not valid until all of it has been written
+        MappedByteBuffer buffer = active.buffer;
+        int offset = active.end;
+        ByteBuffer target = buffer.duplicate();
+        target.position(offset + 4);
+        target.put(recordBytes, 4, length - 4);
+        buffer.putInt(offset, (int) crc.getValue());
+        active.end = offset + length;
+        if (syncIntervalMillis == 0) {
+            buffer.force();
+        } else {
+            dirty = true;
+        }
+        return location(active.number, offset);
+    }
+
+    /**
+     * @return the message in the PUT record at location, or null if its segment has been compacted away
+     */
+    private Message read(long location) {
+        Segment segment = segments.get(segmentOf(location));
+        if (segment == null) {
+            return null;
+        }
+        int offset = offsetOf(location);
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + 9);
+        int id = buffer.getInt();
+        int postedBy = buffer.getInt();
+        long time = buffer.getLong();
+        byte[] text = new byte[buffer.getShort()];
+        buffer.get(text);
+        return new Message(id, postedBy, new String(text, StandardCharsets.UTF_8), time);
+    }
+
+    private List<Message> readTimeline(int accountId, NavigableSet<TimelineKey> keys, int limit) {
+        List<Message> messages = new ArrayList<>(Math.min(limit, 1024));
+        Iterator<TimelineKey> iterator = keys.iterator();
+        while (iterator.hasNext() && messages.size() < limit) {
+            TimelineKey key = iterator.next();
+            Message message = getMessageByID(key.id);
+            //skip a message updated since the key was read
+            if (message != null && message.getPosted_by() == accountId
+                    && message.getTime_posted_epoch() == key.time) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Map every segment file, oldest first, and apply its records to the indexes, up to the first record that is not
+     * whole.
+     */
+    private void replay() throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                numbers.add(Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        numbers.sort(null);
+        for (int number : numbers) {
+            Segment segment = openSegment(number);
+            MappedByteBuffer buffer = segment.buffer;
+            int offset = 0;
+            while (isWholeRecord(buffer, offset)) {
+                long location = location(number, offset);
+                int id = buffer.getInt(offset + 9);
+                if (buffer.get(offset + 8) == PUT) {
+                    reindex(read(location), location);
+                } else {
+                    unindex(id, locations.remove(id), null);
+                    lastId = Math.max(lastId, id);
+                }
+                offset += buffer.getInt(offset + 4);
+            }
+            segment.end = offset;
+            //everything past the last whole record is zeroed, or an append that leaves a gap could let replay read
+            //old bytes beyond it as records again
+            int dirty = firstNonZero(buffer, offset);
+            if (dirty < buffer.capacity()) {
+                System.out.println("Discarding a torn record at offset " + offset + " of " + segment.path);
+                for (int i = dirty; i < buffer.capacity(); i++) {
+                    buffer.put(i, (byte) 0);
+                }
+                buffer.force();
+            }
+            active = segment;
+        }
+    }
+
+    /**
+     * @return the offset of the first byte from offset on that is not zero, or the buffer's capacity if there is none
+     */
+    private static int firstNonZero(MappedByteBuffer buffer, int offset) {
+        int i = offset;
+        for (; i + 8 <= buffer.capacity(); i += 8) {
+            if (buffer.getLong(i) != 0) {
+                break;
+            }
+        }
+        for (; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                return i;
+            }
+        }
+        return i;
+    }
+
+    private boolean isWholeRecord(MappedByteBuffer buffer, int offset) {
+        if (offset + HEADER_BYTES > buffer.capacity()) {
+            return false;
+        }
+        int length = buffer.getInt(offset + 4);
+        if (length < HEADER_BYTES || length > MAX_RECORD_BYTES || offset + length > buffer.capacity()
+                || HEADER_BYTES + buffer.getShort(offset + 25) != length) {
+            return false;
+        }
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset + 4).limit(offset + length);
+        crc.reset();
+        crc.update(record);
+        return (int) crc.getValue() == buffer.getInt(offset);
+    }
+
+    private Segment createSegment(int number) throws IOException {
+        Segment segment = openSegment(number);
+        //make the new file's directory entry durable before anything is written to it
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            //some platforms cannot open a directory; the file is still there once the OS writes the directory back
+        }
+        return segment;
+    }
+
+    private Segment openSegment(int number) throws IOException {
+        Path path = directory.resolve(String.format("%010d", number) + SEGMENT_SUFFIX);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long size = Math.max(channel.size(), segmentBytes);
+        Segment segment = new Segment(number, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        segments.put(number, segment);
+        return segment;
+    }
+
+    private Segment oldestSegment() {
+        Segment oldest = null;
+        for (Map.Entry<Integer, Segment> entry : segments.entrySet()) {
+            if (oldest == null || entry.getKey() < oldest.number) {
+                oldest = entry.getValue();
+            }
+        }
+        return oldest;
+    }
+
+    private int recordLength(long location) {
+        return segments.get(segmentOf(location)).buffer.getInt(offsetOf(location) + 4);
+    }
+
+    private void sync() {
+        synchronized (writeLock) {
+            if (dirty && !closed) {
+                active.buffer.force();
+                dirty = false;
+            }
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private static long location(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    /**
+     * A mapped segment file. end and liveBytes are only used under the write lock.
+     */
+    private static final class Segment {
+        final int number;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int end;
+        long liveBytes;
+
+        Segment(int number, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.number = number;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * A message's place in its account's timeline: by time posted, then message ID.
+     */
+    private static final class TimelineKey implements Comparable<TimelineKey> {
+        final long time;
+        final int id;
+
+        TimelineKey(long time, int id) {
+            this.time = time;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(TimelineKey other) {
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : Integer.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof TimelineKey && compareTo((TimelineKey) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(time) * 31 + id;
+        }
+    }
+}
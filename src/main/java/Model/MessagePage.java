@@ -0,0 +1,44 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models one page of messages returned by a paginated list endpoint.
+ */
+public class MessagePage {
+    /**
+     * The messages on this page, in page order.
+     */
+    private final List<Message> messages;
+    /**
+     * An opaque cursor to pass back as the 'after' parameter to fetch the next page, or null if this is the last page.
+     */
+    private final String next_cursor;
+
+    public MessagePage(List<Message> messages, String next_cursor) {
+        this.messages = messages;
+        this.next_cursor = next_cursor;
+    }
+
+    /**
+     * @return messages
+     */
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return next_cursor
+     */
+    public String getNext_cursor() {
+        return next_cursor;
+    }
+
+    @Override
+    public String toString() {
+        return "MessagePage{" +
+                "messages=" + messages +
+                ", next_cursor='" + next_cursor + '\'' +
+                '}';
+    }
+}
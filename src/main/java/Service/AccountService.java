@@ -2,18 +2,39 @@ package Service;
 
 import Model.Account;
 import DAO.AccountDAO;
+import Util.Cache;
 
 //import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class AccountService {
+    /**
+     * Most accounts kept in the account cache.
+     */
+    static final int ACCOUNT_CACHE_SIZE = Integer.getInteger("cache.account.maxSize", 10_000);
+    /**
+     * How long a cached account may be served after it was read, in milliseconds. Accounts changed through this
+     * service are refreshed straight away; this only bounds how long a change made directly in the database goes
+     * unnoticed.
+     */
+    static final long ACCOUNT_CACHE_TTL_MILLIS = Long.getLong("cache.account.ttlMillis", 300_000L);
+
     AccountDAO AccountDAO;
+    /**
+     * Accounts by account_id. Only existing accounts are cached, so an account created after a failed lookup is
+     * found on the next one.
+     */
+    Cache<Integer, Account> accountCache;
     /**
      * No-args constructor for a AccountService instantiates a plain AccountDAO.
      * There is no need to modify this constructor.
      */
     public AccountService(){
         AccountDAO = new AccountDAO();
+        accountCache = new Cache<>(ACCOUNT_CACHE_SIZE, ACCOUNT_CACHE_TTL_MILLIS);
     }
 
     /**
@@ -25,6 +46,7 @@ public class AccountService {
      */
     public AccountService(AccountDAO AccountDAO){
         this.AccountDAO = AccountDAO;
+        accountCache = new Cache<>(ACCOUNT_CACHE_SIZE, ACCOUNT_CACHE_TTL_MILLIS);
     }
 
     /**
@@ -46,7 +68,12 @@ public class AccountService {
 
         //new account username is not blank, password has at least 4 characters
         if (!Account.getUsername().equals(new String("")) && Account.getPassword().length() >= 4) {
-            return AccountDAO.insertAccount(Account);
+            Account addedAccount = AccountDAO.insertAccount(Account);
+            if (addedAccount != null) {
+                //a new account is usually posted as soon as it is registered, so cache it now
+                accountCache.put(addedAccount.getAccount_id(), addedAccount);
+            }
+            return addedAccount;
         } else {
             return null;
         }
@@ -67,9 +94,10 @@ public class AccountService {
      *         user should have some insight if they attempted to edit a nonexistent Account.)
      */
     public Account updateAccount(int Account_id, Account Account){
-        if (AccountDAO.getAccountByID(Account_id) != null) {
+        if (getAccountByID(Account_id) != null) {
             AccountDAO.updateAccount(Account_id, Account);
-            return AccountDAO.getAccountByID(Account_id);
+            accountCache.invalidate(Account_id);
+            return getAccountByID(Account_id);
         } else  {
             return null;
         }
@@ -104,9 +132,44 @@ public class AccountService {
      *
      * @param id ID of account to check for
      * 
+     * Accounts are served from the account cache when they can be, and read from the database and cached when not.
+     *
      * @return Account matching id parameter, if account exists
      */
     public Account getAccountByID(int id){
-        return AccountDAO.getAccountByID(id);
+        return accountCache.get(id, AccountDAO::getAccountByID);
+    }
+
+    /**
+     * 
+     * Check which of the account IDs provided belong to existing accounts. IDs found in the account cache are not
+     * looked up again; the rest are read from the database in a single round trip and cached.
+     *
+     * @param ids IDs of accounts to check for
+     * 
+     * @return the IDs from the ids parameter that belong to existing accounts
+     */
+    public Set<Integer> getExistingAccountIDs(Collection<Integer> ids){
+        Set<Integer> existing = new HashSet<>();
+        Set<Integer> unknown = new HashSet<>();
+        for (Integer id : ids) {
+            if (accountCache.get(id) != null) {
+                existing.add(id);
+            } else {
+                unknown.add(id);
+            }
+        }
+        for (Account account : AccountDAO.getAccountsByIDs(unknown)) {
+            accountCache.put(account.getAccount_id(), account);
+            existing.add(account.getAccount_id());
+        }
+        return existing;
+    }
+
+    /**
+     * @return hit, miss and eviction counts for the account cache
+     */
+    public Cache.Stats getAccountCacheStats(){
+        return accountCache.getStats();
     }
 }
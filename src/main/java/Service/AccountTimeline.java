@@ -0,0 +1,130 @@
+package Service;
+
+import Model.Message;
+import Util.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The AccountTimeline class holds the most recent messages posted by one account, ordered by time_posted_epoch and
+ * then message_id, so that the account's messages can be listed from memory.
+ *
+ * A timeline holds at most maxMessages messages, and always every message of the account from its oldest message
+ * onward. It can therefore answer any request for the messages after a position at or past its oldest message; older
+ * messages are only in the database. A timeline that holds all of the account's messages is complete and can answer
+ * any request.
+ *
+ * Writes patch the timeline in place. Every method locks the timeline, and lists handed out are copies.
+ */
+class AccountTimeline {
+    private final int maxMessages;
+    private final ArrayList<Message> messages;
+    private boolean complete;
+
+    /**
+     * @param newestFirst the account's most recent messages, newest first, as read from the database with a limit of
+     *                    maxMessages + 1 so that a full read shows there are older messages
+     * @param maxMessages the most messages to hold
+     */
+    AccountTimeline(List<Message> newestFirst, int maxMessages) {
+        this.maxMessages = maxMessages;
+        this.complete = newestFirst.size() <= maxMessages;
+        int size = Math.min(newestFirst.size(), maxMessages);
+        this.messages = new ArrayList<>(size + 1);
+        for (int i = size - 1; i >= 0; i--) {
+            messages.add(newestFirst.get(i));
+        }
+    }
+
+    /**
+     * @return all of the account's messages, oldest first, or null if older messages are only in the database
+     */
+    synchronized List<Message> getAll() {
+        return complete ? new ArrayList<>(messages) : null;
+    }
+
+    /**
+     * @param after the position to list from, or null to list from the account's first message
+     * @param limit the most messages to return
+     * @return up to limit messages following after, oldest first, or null if some of them may only be in the database
+     */
+    synchronized List<Message> getAfter(Cursor after, int limit) {
+        int start = 0;
+        if (after != null) {
+            start = firstAfter(after.getTime_posted_epoch(), after.getMessage_id());
+        }
+        //start counts the messages held at or before after; unless that includes the first one held, older
+        //messages that are only in the database could follow after
+        if (!complete && start == 0) {
+            return null;
+        }
+        return new ArrayList<>(messages.subList(start, Math.min(start + limit, messages.size())));
+    }
+
+    /**
+     * Add a newly posted message. A message older than every message held is left out of an incomplete timeline, as
+     * it belongs with the older messages only in the database. Adding a message already held does nothing.
+     */
+    synchronized void add(Message message) {
+        int index = firstAfter(message.getTime_posted_epoch(), message.getMessage_id());
+        if (index > 0 && messages.get(index - 1).getMessage_id() == message.getMessage_id()) {
+            return;
+        }
+        if (!complete && index == 0) {
+            return;
+        }
+        messages.add(index, message);
+        if (messages.size() > maxMessages) {
+            messages.remove(0);
+            complete = false;
+        }
+    }
+
+    /**
+     * Replace a held message with its updated copy. Updates never change a message's position.
+     */
+    synchronized void update(Message message) {
+        int index = indexOf(message);
+        if (index >= 0) {
+            messages.set(index, message);
+        }
+    }
+
+    /**
+     * Remove a deleted message, if it is held.
+     */
+    synchronized void remove(Message message) {
+        int index = indexOf(message);
+        if (index >= 0) {
+            messages.remove(index);
+        }
+    }
+
+    private int indexOf(Message message) {
+        int index = firstAfter(message.getTime_posted_epoch(), message.getMessage_id()) - 1;
+        return index >= 0 && messages.get(index).getMessage_id() == message.getMessage_id() ? index : -1;
+    }
+
+    /**
+     * @return the index of the first message ordered after (time, messageId), or the size if there is none
+     */
+    private int firstAfter(long time, int messageId) {
+        int low = 0;
+        int high = messages.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Message message = messages.get(mid);
+            int order = Long.compare(message.getTime_posted_epoch(), time);
+            if (order == 0) {
+                order = Integer.compare(message.getMessage_id(), messageId);
+            }
+            if (order <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
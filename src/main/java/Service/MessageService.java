@@ -1,19 +1,127 @@
 package Service;
 
 import Model.Message;
+import Model.MessagePage;
+import Util.Cache;
+import Util.Cursor;
+import Util.SingleFlight;
+import Util.Versions;
+import DAO.ColumnarMessageDAO;
+import DAO.GroupCommitMessageDAO;
 import DAO.MessageDAO;
+import DAO.MessageRepository;
+import DAO.MessageSink;
+import DAO.SegmentMessageDAO;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 //import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public class MessageService {
-    static MessageDAO MessageDAO;
     /**
-     * No-args constructor for a MessageService instantiates a plain MessageDAO.
-     * There is no need to modify this constructor.
+     * Messages must be shorter than this many characters.
+     */
+    public static final int MAX_MESSAGE_LENGTH = 255;
+    /**
+     * Number of inserts sent to the database per JDBC batch by addMessages.
+     */
+    static final int BULK_CHUNK_SIZE = Integer.getInteger("bulk.chunkSize", 500);
+    /**
+     * Most messages kept in the message cache.
+     */
+    static final int MESSAGE_CACHE_SIZE = Integer.getInteger("cache.message.maxSize", 10_000);
+    /**
+     * How long a cached message may be served after it was read, in milliseconds. Messages changed through this
+     * service are updated in the cache straight away; this only bounds how long a change made directly in the
+     * database goes unnoticed.
+     */
+    static final long MESSAGE_CACHE_TTL_MILLIS = Long.getLong("cache.message.ttlMillis", 300_000L);
+    /**
+     * How long the cache may remember that a message id does not exist, in milliseconds.
+     */
+    static final long MISSING_MESSAGE_TTL_MILLIS = Long.getLong("cache.message.missingTtlMillis", 1_000L);
+    /**
+     * Most account timelines kept in memory.
+     */
+    static final int TIMELINE_CACHE_SIZE = Integer.getInteger("cache.timeline.maxAccounts", 1_000);
+    /**
+     * Most recent messages kept in each account timeline. Older messages are read from the database.
+     */
+    static final int TIMELINE_MAX_MESSAGES = Integer.getInteger("cache.timeline.maxMessages", 200);
+    /**
+     * How long an account timeline may be served after it was read, in milliseconds.
+     */
+    static final long TIMELINE_TTL_MILLIS = Long.getLong("cache.timeline.ttlMillis", 300_000L);
+    /**
+     * Number of version counters message ids, and separately account ids, are spread over.
+     */
+    static final int VERSION_STRIPES = Integer.getInteger("etag.stripes", 4096);
+    /**
+     * Where messages are read from: "h2" reads them from the database, "memory" loads them all into a
+     * ColumnarMessageDAO at startup and reads them from there; writes reach the database either way. "segments" keeps
+     * messages out of the database, in a SegmentMessageDAO's files under message.segments.dir.
+     */
+    static final String MESSAGE_STORE = System.getProperty("message.store", "h2");
+    /**
+     * Most single-message inserts committed together in one transaction; 0 commits each insert on its own.
+     */
+    static final int GROUP_COMMIT_MAX_ROWS = Integer.getInteger("groupCommit.maxRows", 0);
+    /**
+     * Longest an insert waits for others to be committed with, in milliseconds, when group commit is on.
+     */
+    static final long GROUP_COMMIT_MAX_DELAY_MILLIS = Long.getLong("groupCommit.maxDelayMillis", 2L);
+
+    static MessageRepository MessageDAO;
+    /**
+     * Messages by message_id. An empty Optional records that no message has the id, so repeated lookups of a missing
+     * or deleted message do not each reach the database.
+     */
+    static Cache<Integer, Optional<Message>> messageCache;
+    /**
+     * The most recent messages of recently listed accounts, by posted_by.
+     */
+    static Cache<Integer, AccountTimeline> timelineCache;
+    /**
+     * Versions of each message, of each account's list of messages, and of the list of all messages. Every write
+     * through this service moves the versions it affects on, once the write can be read back.
+     */
+    static Versions messageVersions;
+    static Versions accountVersions;
+    static Versions allMessagesVersion;
+    /**
+     * Database reads in progress that concurrent requests for the same message, or the same account's messages, wait
+     * for and share instead of repeating: message lookups by message_id, timeline loads by posted_by, and full lists
+     * of an account's messages by posted_by.
+     */
+    static SingleFlight<Integer, Optional<Message>> messageFlights;
+    static SingleFlight<Integer, AccountTimeline> timelineFlights;
+    static SingleFlight<Integer, List<Message>> accountMessagesFlights;
+    /**
+     * No-args constructor for a MessageService instantiates the MessageRepository picked by message.store, grouping
+     * inserts into shared commits if groupCommit.maxRows is set.
      */
     public MessageService(){
-        MessageDAO = new MessageDAO();
+        closeRepository();
+        MessageDAO = createRepository(MESSAGE_STORE);
+        if (GROUP_COMMIT_MAX_ROWS > 0) {
+            MessageDAO = new GroupCommitMessageDAO(MessageDAO, GROUP_COMMIT_MAX_ROWS, GROUP_COMMIT_MAX_DELAY_MILLIS);
+        }
+        messageCache = new Cache<>(MESSAGE_CACHE_SIZE, MESSAGE_CACHE_TTL_MILLIS);
+        timelineCache = new Cache<>(TIMELINE_CACHE_SIZE, TIMELINE_TTL_MILLIS);
+        messageVersions = new Versions(VERSION_STRIPES);
+        accountVersions = new Versions(VERSION_STRIPES);
+        allMessagesVersion = new Versions(1);
+        messageFlights = new SingleFlight<>();
+        timelineFlights = new SingleFlight<>();
+        accountMessagesFlights = new SingleFlight<>();
     }
 
     /**
@@ -23,8 +131,53 @@ public class MessageService {
      * There is no need to modify this constructor.
      * @param MessageDAO
      */
-    public MessageService(MessageDAO MessageDAO){
+    public MessageService(MessageRepository MessageDAO){
         MessageService.MessageDAO = MessageDAO;
+        messageCache = new Cache<>(MESSAGE_CACHE_SIZE, MESSAGE_CACHE_TTL_MILLIS);
+        timelineCache = new Cache<>(TIMELINE_CACHE_SIZE, TIMELINE_TTL_MILLIS);
+        messageVersions = new Versions(VERSION_STRIPES);
+        accountVersions = new Versions(VERSION_STRIPES);
+        allMessagesVersion = new Versions(1);
+        messageFlights = new SingleFlight<>();
+        timelineFlights = new SingleFlight<>();
+        accountMessagesFlights = new SingleFlight<>();
+    }
+
+    /**
+     * @param store "h2", "memory" or "segments"
+     * @return a MessageDAO, for "memory" a ColumnarMessageDAO loaded from one, or for "segments" a SegmentMessageDAO
+     */
+    static MessageRepository createRepository(String store) {
+        switch (store) {
+            case "h2":
+                return new MessageDAO();
+            case "memory":
+                return new ColumnarMessageDAO(new MessageDAO());
+            case "segments":
+                //posted_by is checked on every write; the account cache answers for accounts seen before
+                AccountService accountService = new AccountService();
+                try {
+                    return new SegmentMessageDAO(id -> accountService.getAccountByID(id) != null);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("could not open the message segments", e);
+                }
+            default:
+                throw new IllegalArgumentException(
+                        "unknown message.store " + store + ", expected h2, memory or segments");
+        }
+    }
+
+    /**
+     * Close the repository a previous MessageService opened, if it holds files open, so a new one can open them.
+     */
+    static void closeRepository() {
+        if (MessageDAO instanceof Closeable) {
+            try {
+                ((Closeable) MessageDAO).close();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
     }
 
     /**
@@ -40,32 +193,86 @@ public class MessageService {
      *
      * @param Message an object representing a new Message.
      * @return the newly added Message if the add operation was successful, including the Message_id. We do this to
-     *         inform our provide the front-end client with information about the added Message.
+     *         inform our provide the front-end client with information about the added Message. Returns null if the
+     *         Message's posted_by does not refer to an existing Account.
      */
     public Message addMessage(Message Message){
-        return MessageDAO.insertMessage(Message);
+        Message addedMessage = MessageDAO.insertMessage(Message);
+        if (addedMessage != null) {
+            forgetReadsInFlight(addedMessage);
+            //replaces a cached "missing" for the new id, in case it was looked up before it existed
+            messageCache.put(addedMessage.getMessage_id(), Optional.of(addedMessage));
+            patchTimeline(addedMessage.getPosted_by(), timeline -> timeline.add(addedMessage));
+            recordChange(addedMessage);
+        }
+        return addedMessage;
+    }
+
+    /**
+     * Use the MessageDAO to add many new Messages in one transaction, batching the inserts. Either all of the Messages
+     * are added or none are. Callers are expected to have validated every Message first.
+     *
+     * @param Messages objects representing the new Messages.
+     * @return the newly added Messages, including their Message_ids, in the order given; or null if nothing was added.
+     */
+    public List<Message> addMessages(List<Message> Messages){
+        List<Message> addedMessages = MessageDAO.insertMessages(Messages, BULK_CHUNK_SIZE);
+        if (addedMessages != null) {
+            Set<Integer> authorIDs = new HashSet<>();
+            for (Message addedMessage : addedMessages) {
+                forgetReadsInFlight(addedMessage);
+                messageCache.put(addedMessage.getMessage_id(), Optional.of(addedMessage));
+                authorIDs.add(addedMessage.getPosted_by());
+            }
+            //a backfill can replace most of a timeline, so reload them rather than patch them a message at a time
+            for (Integer authorID : authorIDs) {
+                timelineCache.invalidate(authorID);
+            }
+            for (Message addedMessage : addedMessages) {
+                recordChange(addedMessage);
+            }
+        }
+        return addedMessages;
     }
 
     /**
-     * DONE: Use the MessageDAO to update an existing Message from the database.
-     * You should first check that the Message ID already exists. To do this, you could use an if statement that checks
-     * if MessageDAO.getMessageById returns null for the Message's ID, as this would indicate that the Message id does not
-     * exist.
+     * Check a message text against the rules for posting or updating a message: it must not be blank and must be
+     * shorter than MAX_MESSAGE_LENGTH characters.
+     *
+     * @param messageText the text to check
+     * @return whether the text may be posted
+     */
+    public static boolean isValidMessageText(String messageText) {
+        return messageText != null && !messageText.isEmpty() && messageText.length() < MAX_MESSAGE_LENGTH;
+    }
+
+    /**
+     * DONE: Use the MessageDAO to update the text of an existing Message in the database.
+     * The update and the read-back of the updated Message happen in a single statement, so there is no separate check
+     * that the Message ID exists: a nonexistent Message ID simply updates nothing and returns null.
      *
      * @param Message_id the ID of the Message to be modified.
-     * @param Message an object containing all data that should replace the values contained by the existing Message_id.
+     * @param Message an object containing the new message_text for the existing Message_id.
      *         the Message object does not contain a Message ID.
      * @return the newly updated Message if the update operation was successful. Return null if the update operation was
      *         unsuccessful. We do this to inform our application about successful/unsuccessful operations. (eg, the
      *         user should have some insight if they attempted to edit a nonexistent Message.)
      */
     public Message updateMessage(int Message_id, Message Message){
-        if (MessageDAO.getMessageByID(Message_id) != null) {
-            MessageDAO.updateMessage(Message_id, Message);
-            return MessageDAO.getMessageByID(Message_id);
-        } else  {
-            return null;
+        Message updatedMessage = MessageDAO.updateMessageText(Message_id, Message.getMessage_text());
+        messageFlights.forget(Message_id);
+        if (updatedMessage != null) {
+            forgetReadsInFlight(updatedMessage);
         }
+        //invalidate rather than put: two concurrent updates could otherwise cache their results in the wrong order
+        messageCache.invalidate(Message_id);
+        if (updatedMessage != null) {
+            //timelines are patched instead, as reloading one costs far more than one message; the same race can
+            //leave the losing text in a timeline until it expires
+            patchTimeline(updatedMessage.getPosted_by(), timeline -> timeline.update(updatedMessage));
+            recordChange(updatedMessage);
+        }
+        return updatedMessage;
     }
 
     /**
@@ -77,15 +284,31 @@ public class MessageService {
     public List<Message> getAllMessages() {
         return MessageDAO.getAllMessages();
     }  
+
+    /**
+     * Hand every Message to the sink as it is read from the database, without building a List of all of them.
+     *
+     * @param sink receives each Message in turn
+     * @throws IOException if the sink fails to write a Message onward
+     */
+    public void streamAllMessages(MessageSink sink) throws IOException {
+        MessageDAO.streamAllMessages(sink);
+    }
     
     /**
      * Return message using message_id provided
      * 
+     * Messages are served from the message cache when they can be, and read from the database and cached when not.
+     * An id with no message is remembered for MISSING_MESSAGE_TTL_MILLIS.
+     * 
      * @param id Message id to check for
      * @return Message with message_id matching id parameter
      */
     public static Message getMessageByID(int id) {
-        return MessageDAO.getMessageByID(id);
+        return messageCache.get(id, key -> messageFlights.load(key,
+                        messageId -> Optional.ofNullable(MessageDAO.getMessageByID(messageId))),
+                message -> message.isPresent() ? MESSAGE_CACHE_TTL_MILLIS : MISSING_MESSAGE_TTL_MILLIS)
+                .orElse(null);
     }
 
     /**
@@ -95,10 +318,193 @@ public class MessageService {
      * @return Message found and deleted matching message_id parameter
      */
     public static Message deleteMessageByID(int id) {
-        return MessageDAO.deleteMessageByID(id);
+        Message deletedMessage = MessageDAO.deleteMessageByID(id);
+        messageFlights.forget(id);
+        if (deletedMessage != null) {
+            forgetReadsInFlight(deletedMessage);
+        }
+        messageCache.put(id, Optional.empty(), MISSING_MESSAGE_TTL_MILLIS);
+        if (deletedMessage != null) {
+            patchTimeline(deletedMessage.getPosted_by(), timeline -> timeline.remove(deletedMessage));
+            recordChange(deletedMessage);
+        }
+        return deletedMessage;
     }
 
+    /**
+     * @return transactions and messages committed by group commit, or null if it is off
+     */
+    public static GroupCommitMessageDAO.Stats getGroupCommitStats() {
+        return MessageDAO instanceof GroupCommitMessageDAO ? ((GroupCommitMessageDAO) MessageDAO).getStats() : null;
+    }
+
+    /**
+     * @return hit, miss, eviction and expiration counts for the message cache. Lookups answered by a cached
+     *         "missing" count as hits.
+     */
+    public static Cache.Stats getMessageCacheStats() {
+        return messageCache.getStats();
+    }
+
+    /**
+     * Return every message posted by an account, oldest first. Served from the account's timeline when it holds all
+     * of the account's messages.
+     *
+     * @param id Account id whose messages are listed
+     * @return the account's messages
+     */
     public static List<Message> getMessagesByAccountID(int id) {
-        return MessageDAO.getMessagesByAccountID(id);
+        List<Message> messages = getTimeline(id).getAll();
+        return messages != null ? messages : accountMessagesFlights.load(id, MessageDAO::getMessagesByAccountID);
+    }
+
+    /**
+     * Hand every Message posted by an account to the sink as it is read from the database, oldest first.
+     *
+     * @param id Account id whose messages are streamed
+     * @param sink receives each Message in turn
+     * @throws IOException if the sink fails to write a Message onward
+     */
+    public static void streamMessagesByAccountID(int id, MessageSink sink) throws IOException {
+        List<Message> messages = getTimeline(id).getAll();
+        if (messages == null) {
+            MessageDAO.streamMessagesByAccountID(id, sink);
+            return;
+        }
+        for (Message message : messages) {
+            sink.accept(message);
+        }
+    }
+
+    /**
+     * Return one page of all messages, ordered by message_id.
+     * One extra row is read to find out whether another page follows.
+     *
+     * @param after cursor returned with the previous page, or null for the first page
+     * @param limit maximum number of messages on the page
+     * @return the page, with a cursor for the next page if there is one
+     */
+    public MessagePage getMessagesPage(Cursor after, int limit) {
+        int afterMessageId = after == null ? 0 : after.getMessage_id();
+        return toPage(MessageDAO.getMessagesAfter(afterMessageId, limit + 1), limit);
+    }
+
+    /**
+     * Return one page of the messages posted by an account, ordered by time_posted_epoch then message_id.
+     * Pages within the account's timeline are served from memory; older pages are read from the database.
+     *
+     * @param id Account id whose messages are listed
+     * @param after cursor returned with the previous page, or null for the first page
+     * @param limit maximum number of messages on the page
+     * @return the page, with a cursor for the next page if there is one
+     */
+    public static MessagePage getMessagesByAccountIDPage(int id, Cursor after, int limit) {
+        List<Message> messages = getTimeline(id).getAfter(after, limit + 1);
+        if (messages != null) {
+            return toPage(messages, limit);
+        }
+        long afterTime = after == null ? Long.MIN_VALUE : after.getTime_posted_epoch();
+        int afterMessageId = after == null ? Integer.MIN_VALUE : after.getMessage_id();
+        return toPage(MessageDAO.getMessagesByAccountIDAfter(id, afterTime, afterMessageId, limit + 1), limit);
+    }
+
+    /**
+     * @return the timeline of an account, reading the account's most recent messages from the database if it is not
+     *         in memory
+     */
+    private static AccountTimeline getTimeline(int id) {
+        return timelineCache.get(id, key -> timelineFlights.load(key, accountId -> new AccountTimeline(
+                MessageDAO.getRecentMessagesByAccountID(accountId, TIMELINE_MAX_MESSAGES + 1), TIMELINE_MAX_MESSAGES)));
+    }
+
+    /**
+     * Apply a write to an account's timeline if it is in memory. If it is not, any timeline being read for the
+     * account right now may have missed the write, so it is not kept.
+     */
+    private static void patchTimeline(int id, Consumer<AccountTimeline> patch) {
+        AccountTimeline timeline = timelineCache.peek(id);
+        if (timeline != null) {
+            patch.accept(timeline);
+        } else {
+            timelineCache.invalidate(id);
+        }
+    }
+
+    /**
+     * Stop sharing reads of a message and its account that are already in flight, as they may have missed a write to
+     * it. Called as soon as the write has reached the database and before the caches are touched: a cache miss after
+     * an invalidate must start a new read, since a shared old read would be cached under the new write stamp.
+     */
+    private static void forgetReadsInFlight(Message message) {
+        messageFlights.forget(message.getMessage_id());
+        timelineFlights.forget(message.getPosted_by());
+        accountMessagesFlights.forget(message.getPosted_by());
+    }
+
+    /**
+     * Move on the versions a write to message affects. Called after the write has reached the database and the
+     * caches, so that nobody can read the new version and then the old message.
+     */
+    private static void recordChange(Message message) {
+        messageVersions.bump(message.getMessage_id());
+        accountVersions.bump(message.getPosted_by());
+        allMessagesVersion.bump(0);
+    }
+
+    /**
+     * @param id Message id
+     * @return the current version of the message, which changes whenever the message is added, updated or deleted
+     */
+    public static String getMessageVersion(int id) {
+        return messageVersions.get(id);
+    }
+
+    /**
+     * @param id Account id
+     * @return the current version of the account's list of messages, which changes whenever one of them is added,
+     *         updated or deleted
+     */
+    public static String getAccountMessagesVersion(int id) {
+        return accountVersions.get(id);
+    }
+
+    /**
+     * @return the current version of the list of all messages, which changes whenever any message is added, updated
+     *         or deleted
+     */
+    public static String getAllMessagesVersion() {
+        return allMessagesVersion.get(0);
+    }
+
+    /**
+     * @return loads run and concurrent callers collapsed into them, for message lookups, timeline loads and full
+     *         lists of an account's messages, by name
+     */
+    public static Map<String, SingleFlight.Stats> getSingleFlightStats() {
+        Map<String, SingleFlight.Stats> stats = new LinkedHashMap<>();
+        stats.put("message", messageFlights.getStats());
+        stats.put("timeline", timelineFlights.getStats());
+        stats.put("account_messages", accountMessagesFlights.getStats());
+        return stats;
+    }
+
+    /**
+     * @return hit, miss, eviction and expiration counts for the account timelines
+     */
+    public static Cache.Stats getTimelineCacheStats() {
+        return timelineCache.getStats();
+    }
+
+    /**
+     * Trim a list read with one row more than the page limit down to the page, and build the next cursor from the
+     * last message kept if the extra row showed there are more.
+     */
+    private static MessagePage toPage(List<Message> messages, int limit) {
+        if (messages.size() <= limit) {
+            return new MessagePage(messages, null);
+        }
+        List<Message> page = messages.subList(0, limit);
+        Message last = page.get(limit - 1);
+        return new MessagePage(page, new Cursor(last.getTime_posted_epoch(), last.getMessage_id()).encode());
     }
 }
@@ -0,0 +1,130 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Bulkhead class runs one kind of work on its own bounded set of threads, so that a flood of that work can only
+ * use up its own threads and never those meant for other kinds of work.
+ *
+ * At most threads tasks run at once and at most queueDepth more wait for a thread. A task submitted past that is
+ * refused straight away rather than queued, so callers can turn it away (e.g. with a 503) instead of letting it wait
+ * behind everything else. Idle threads exit after a minute, so an unused bulkhead holds no threads.
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int threads;
+    private final int queueDepth;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param name prefix of the names of the bulkhead's threads
+     * @param threads most tasks run at once
+     * @param queueDepth most tasks waiting for a thread (0 for none)
+     */
+    public Bulkhead(String name, int threads, int queueDepth) {
+        if (threads < 1 || queueDepth < 0) {
+            throw new IllegalArgumentException("invalid bulkhead size: threads=" + threads + ", queueDepth=" + queueDepth);
+        }
+        this.name = name;
+        this.threads = threads;
+        this.queueDepth = queueDepth;
+        BlockingQueue<Runnable> queue = queueDepth > 0 ? new ArrayBlockingQueue<>(queueDepth) : new SynchronousQueue<>();
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Run task on one of the bulkhead's threads.
+     *
+     * @return a future completed with the task's result, or exceptionally with whatever the task threw
+     * @throws RejectedExecutionException if the bulkhead is full or shut down; the task is not run
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Stop taking tasks. Tasks already submitted still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return a snapshot of how busy the bulkhead is
+     */
+    public Stats getStats() {
+        return new Stats(threads, queueDepth, executor.getActiveCount(), executor.getQueue().size(),
+                executor.getCompletedTaskCount(), rejected.get());
+    }
+
+    public static class Stats {
+        private final int threads;
+        private final int queueDepth;
+        private final int active;
+        private final int queued;
+        private final long completed;
+        private final long rejected;
+
+        Stats(int threads, int queueDepth, int active, int queued, long completed, long rejected) {
+            this.threads = threads;
+            this.queueDepth = queueDepth;
+            this.active = active;
+            this.queued = queued;
+            this.completed = completed;
+            this.rejected = rejected;
+        }
+
+        public int getThreads() { return threads; }
+        public int getQueueDepth() { return queueDepth; }
+        public int getActive() { return active; }
+        public int getQueued() { return queued; }
+        public long getCompleted() { return completed; }
+        public long getRejected() { return rejected; }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "threads=" + threads +
+                    ", queueDepth=" + queueDepth +
+                    ", active=" + active +
+                    ", queued=" + queued +
+                    ", completed=" + completed +
+                    ", rejected=" + rejected +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package Util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * The Cache class is a bounded, concurrent, in-memory map from keys to values read from the database, so that hot
+ * rows are read from memory instead of a fresh query.
+ *
+ * Keys are spread over a fixed number of segments, each an access-ordered LinkedHashMap guarded by its own lock, so
+ * threads working on different keys rarely wait on each other. Each segment evicts its least recently used entry
+ * once it holds its share of maxSize entries; small caches use a single segment, and so a single LRU order. Entries
+ * also expire ttlMillis after they were written, so a value changed behind the application's back is only served
+ * stale for a bounded time.
+ *
+ * Values are shared between callers rather than copied, so callers must not modify them.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class Cache<K, V> {
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_SIZE = 64;
+    private static final long NEVER = Long.MAX_VALUE;
+
+    /**
+     * Counters for one cache.
+     */
+    public static class Stats {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+        final LongAdder expirations = new LongAdder();
+
+        public long getHits() { return hits.sum(); }
+        public long getMisses() { return misses.sum(); }
+        public long getEvictions() { return evictions.sum(); }
+        public long getExpirations() { return expirations.sum(); }
+
+        /**
+         * @return the fraction of lookups answered from the cache, between 0 and 1
+         */
+        public double getHitRate() {
+            long hits = getHits();
+            long total = hits + getMisses();
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "Cache{" +
+                    "hits=" + getHits() +
+                    ", misses=" + getMisses() +
+                    ", evictions=" + getEvictions() +
+                    ", expirations=" + getExpirations() +
+                    '}';
+        }
+    }
+
+    private final Segment<K, V>[] segments;
+    private final long ttlMillis;
+    private final Stats stats = new Stats();
+
+    /**
+     * @param maxSize the most entries to hold; least recently used entries are evicted beyond this
+     * @param ttlMillis how long an entry may be served after it was written, or 0 to keep entries until evicted
+     */
+    @SuppressWarnings("unchecked")
+    public Cache(int maxSize, long ttlMillis) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        int count = 1;
+        while (count < MAX_SEGMENTS && count * 2 * MIN_SEGMENT_SIZE <= maxSize) {
+            count *= 2;
+        }
+        segments = new Segment[count];
+        int perSegment = (maxSize + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(perSegment);
+        }
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return the cached value for key, or null if it is not cached or has expired
+     */
+    public V get(K key) {
+        V value = segmentFor(key).get(key, System.nanoTime(), stats);
+        if (value != null) {
+            stats.hits.increment();
+        } else {
+            stats.misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Like get(key), but not counted as a hit or miss. For callers that only want to update a value if it is cached.
+     *
+     * @return the cached value for key, or null if it is not cached or has expired
+     */
+    public V peek(K key) {
+        return segmentFor(key).get(key, System.nanoTime(), stats);
+    }
+
+    /**
+     * Return the cached value for key, or else load it with loader and cache it. A null result from the loader is
+     * returned but not cached.
+     *
+     * If the key is invalidated or written while the loader runs, the loaded value may already be out of date, so it
+     * is returned to this caller but not cached. Writes are tracked per segment, so a write to another key in the
+     * same segment has the same effect; that only costs a later miss.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        return get(key, loader, value -> ttlMillis);
+    }
+
+    /**
+     * Like get(key, loader), but the loaded value is cached for the number of milliseconds ttlMillis gives for it,
+     * so that, for example, a value recording that a row does not exist can be kept for less time than the row would.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader, ToLongFunction<? super V> ttlMillis) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        Segment<K, V> segment = segmentFor(key);
+        long stamp = segment.stamp();
+        value = loader.apply(key);
+        if (value != null) {
+            segment.put(key, value, expiresAt(ttlMillis.applyAsLong(value)), stamp, stats);
+        }
+        return value;
+    }
+
+    /**
+     * Cache value for key, replacing any value already cached. Loads of key already in progress will not be cached.
+     */
+    public void put(K key, V value) {
+        put(key, value, ttlMillis);
+    }
+
+    /**
+     * Cache value for key for ttlMillis milliseconds, or until evicted if ttlMillis is 0.
+     */
+    public void put(K key, V value, long ttlMillis) {
+        segmentFor(key).put(key, value, expiresAt(ttlMillis), -1, stats);
+    }
+
+    /**
+     * Remove key from the cache. Loads of key already in progress will not be cached.
+     */
+    public void invalidate(K key) {
+        segmentFor(key).invalidate(key);
+    }
+
+    /**
+     * Remove every entry from the cache.
+     */
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            segment.invalidateAll();
+        }
+    }
+
+    /**
+     * @return the number of entries held, including any that have expired but not yet been removed
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    private static long expiresAt(long ttlMillis) {
+        return ttlMillis == 0 ? NEVER : System.nanoTime() + ttlMillis * 1_000_000L;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Segment<K, V> {
+        private final int maxSize;
+        private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long writes;
+
+        Segment(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        synchronized V get(K key, long now, Stats stats) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt != NEVER && entry.expiresAt - now < 0) {
+                entries.remove(key);
+                stats.expirations.increment();
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized long stamp() {
+            return writes;
+        }
+
+        /**
+         * @param stamp the write count seen before the value was loaded, or -1 for a write that replaces any value
+         */
+        synchronized void put(K key, V value, long expiresAt, long stamp, Stats stats) {
+            if (stamp != -1) {
+                if (stamp != writes) {
+                    return;
+                }
+            } else {
+                writes++;
+            }
+            entries.put(key, new Entry<>(value, expiresAt));
+            Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxSize) {
+                eldest.next();
+                eldest.remove();
+                stats.evictions.increment();
+            }
+        }
+
+        synchronized void invalidate(K key) {
+            writes++;
+            entries.remove(key);
+        }
+
+        synchronized void invalidateAll() {
+            writes++;
+            entries.clear();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
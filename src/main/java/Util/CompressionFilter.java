@@ -0,0 +1,652 @@
+package Util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * The CompressionFilter class compresses response bodies with gzip or deflate, whichever the client's
+ * Accept-Encoding header prefers, so that large JSON lists cross the network at a fraction of their size.
+ *
+ * A body is held back until it reaches minSize bytes. Bodies that end before then are sent as they are, with their
+ * exact Content-Length, since compressing them costs more than it saves. Past minSize, the body is compressed as it
+ * is written, and every flush from the application pushes out everything compressed so far, so streamed responses
+ * still reach the client as they are produced.
+ *
+ * A compressed body is a different representation from the plain one, so its ETag gets a suffix naming the
+ * encoding; the suffix is removed from If-None-Match before the application sees it, and put back on the ETag of a
+ * 304 answering it.
+ *
+ * A body written without blocking (with a WriteListener) is sent as it is.
+ *
+ * Brotli is not offered: the JDK has no Brotli encoder.
+ */
+public class CompressionFilter implements Filter {
+    private static final String[] COMPRESSIBLE_TYPES = {
+            "application/json", "application/x-ndjson", "text/", "application/xml", "application/javascript" };
+
+    /**
+     * Counters for the responses passed through one filter.
+     */
+    public static class Stats {
+        final LongAdder compressedResponses = new LongAdder();
+        final LongAdder uncompressedResponses = new LongAdder();
+        final LongAdder bytesIn = new LongAdder();
+        final LongAdder bytesOut = new LongAdder();
+        final LongAdder compressionNanos = new LongAdder();
+
+        public long getCompressedResponses() { return compressedResponses.sum(); }
+        public long getUncompressedResponses() { return uncompressedResponses.sum(); }
+        /** @return bytes written by the application into compressed responses */
+        public long getBytesIn() { return bytesIn.sum(); }
+        /** @return bytes sent to clients for compressed responses */
+        public long getBytesOut() { return bytesOut.sum(); }
+        public long getBytesSaved() { return getBytesIn() - getBytesOut(); }
+        /** @return time spent compressing, not counting time spent writing compressed bytes to the network */
+        public long getCompressionNanos() { return compressionNanos.sum(); }
+
+        @Override
+        public String toString() {
+            return "Compression{" +
+                    "compressedResponses=" + getCompressedResponses() +
+                    ", uncompressedResponses=" + getUncompressedResponses() +
+                    ", bytesIn=" + getBytesIn() +
+                    ", bytesOut=" + getBytesOut() +
+                    ", compressionMillis=" + getCompressionNanos() / 1_000_000 +
+                    '}';
+        }
+    }
+
+    private final int minSize;
+    private final int level;
+    private final Stats stats = new Stats();
+
+    /**
+     * @param minSize smallest body, in bytes, worth compressing
+     * @param level deflate compression level, from 1 (fastest) to 9 (smallest)
+     */
+    public CompressionFilter(int minSize, int level) {
+        this.minSize = minSize;
+        this.level = level;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        String encoding = negotiate(httpRequest.getHeader("Accept-Encoding"));
+        if (encoding == null || "HEAD".equals(httpRequest.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+        CompressingResponse compressingResponse = new CompressingResponse((HttpServletResponse) response, encoding,
+                httpRequest.getHeader("If-None-Match"));
+        boolean handled = false;
+        try {
+            chain.doFilter(new CompressingRequest(httpRequest, compressingResponse), compressingResponse);
+            handled = true;
+        } finally {
+            //an async response is finished when the application completes it, see CompressingRequest
+            if (!request.isAsyncStarted()) {
+                if (handled) {
+                    compressingResponse.finish();
+                } else {
+                    compressingResponse.abandon();
+                }
+            }
+        }
+    }
+
+    /**
+     * Pick the encoding the client prefers out of those offered here, honouring q-values: "gzip;q=0" refuses gzip,
+     * and "*" stands for any encoding not named. Ties go to gzip.
+     *
+     * @return "gzip", "deflate", or null to send the body as it is
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.trim().split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = Math.max(gzip, q);
+            } else if (coding.equals("deflate")) {
+                deflate = Math.max(deflate, q);
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip <= 0 && deflate <= 0) {
+            return null;
+        }
+        return gzip >= deflate ? "gzip" : "deflate";
+    }
+
+    private static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        for (String compressible : COMPRESSIBLE_TYPES) {
+            if (type.startsWith(compressible)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the encoding suffix this filter adds to ETags from If-None-Match, so that the application can compare
+     * it with its own ETags.
+     *
+     * It also hands out a FinishingAsyncContext when the application goes async, as the compressed body must be
+     * finished before the container closes the response on complete(), and AsyncListener.onComplete() runs after.
+     */
+    private static final class CompressingRequest extends HttpServletRequestWrapper {
+        private final CompressingResponse response;
+        private AsyncContext asyncContext;
+
+        CompressingRequest(HttpServletRequest request, CompressingResponse response) {
+            super(request);
+            this.response = response;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            String value = super.getHeader(name);
+            if (value != null && "If-None-Match".equalsIgnoreCase(name)) {
+                value = value.replace("--gzip\"", "\"").replace("--deflate\"", "\"");
+            }
+            return value;
+        }
+
+        @Override
+        public AsyncContext startAsync() {
+            asyncContext = new FinishingAsyncContext(super.startAsync(), response);
+            return asyncContext;
+        }
+
+        @Override
+        public AsyncContext startAsync(ServletRequest request, ServletResponse response) {
+            asyncContext = new FinishingAsyncContext(super.startAsync(request, response), this.response);
+            return asyncContext;
+        }
+
+        @Override
+        public AsyncContext getAsyncContext() {
+            return asyncContext != null ? asyncContext : super.getAsyncContext();
+        }
+    }
+
+    /**
+     * An AsyncContext that finishes the compressed body before completing the response.
+     */
+    private static final class FinishingAsyncContext implements AsyncContext {
+        private final AsyncContext context;
+        private final CompressingResponse response;
+
+        FinishingAsyncContext(AsyncContext context, CompressingResponse response) {
+            this.context = context;
+            this.response = response;
+        }
+
+        @Override
+        public void complete() {
+            try {
+                response.finish();
+            } catch (IOException e) {
+                //the client has gone away; there is nothing left to send it
+            }
+            context.complete();
+        }
+
+        @Override
+        public ServletRequest getRequest() { return context.getRequest(); }
+        @Override
+        public ServletResponse getResponse() { return context.getResponse(); }
+        @Override
+        public boolean hasOriginalRequestAndResponse() { return context.hasOriginalRequestAndResponse(); }
+        @Override
+        public void dispatch() { context.dispatch(); }
+        @Override
+        public void dispatch(String path) { context.dispatch(path); }
+        @Override
+        public void dispatch(ServletContext servletContext, String path) { context.dispatch(servletContext, path); }
+        @Override
+        public void start(Runnable run) { context.start(run); }
+        @Override
+        public void addListener(AsyncListener listener) { context.addListener(listener); }
+        @Override
+        public void addListener(AsyncListener listener, ServletRequest request, ServletResponse response) {
+            context.addListener(listener, request, response);
+        }
+        @Override
+        public <T extends AsyncListener> T createListener(Class<T> type) throws ServletException {
+            return context.createListener(type);
+        }
+        @Override
+        public void setTimeout(long timeout) { context.setTimeout(timeout); }
+        @Override
+        public long getTimeout() { return context.getTimeout(); }
+    }
+
+    /**
+     * Holds back Content-Length until it is known whether the body will be compressed, and hands out a
+     * CompressingStream in place of the real output stream.
+     */
+    private final class CompressingResponse extends HttpServletResponseWrapper {
+        private final String encoding;
+        /** The request's If-None-Match as the client sent it, with the suffixes this filter adds to ETags. */
+        private final String ifNoneMatch;
+        private CompressingStream stream;
+        private PrintWriter writer;
+        private long contentLength = -1;
+
+        CompressingResponse(HttpServletResponse response, String encoding, String ifNoneMatch) {
+            super(response);
+            this.encoding = encoding;
+            this.ifNoneMatch = ifNoneMatch;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (stream == null) {
+                stream = new CompressingStream(this, (HttpServletResponse) getResponse(), encoding);
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int length) {
+            contentLength = length;
+        }
+
+        @Override
+        public void setContentLengthLong(long length) {
+            contentLength = length;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                contentLength = value == null ? -1 : Long.parseLong(value);
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                setHeader(name, value);
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (stream != null) {
+                stream.flush();
+            }
+            super.flushBuffer();
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            stream = null;
+            writer = null;
+            contentLength = -1;
+        }
+
+        /**
+         * Send whatever is held back, finish the compressed body if there is one, and restore a Content-Length the
+         * application set on a response with no body at all.
+         */
+        void finish() throws IOException {
+            if (getStatus() == HttpServletResponse.SC_NOT_MODIFIED) {
+                restoreEtagSuffix();
+            }
+            if (writer != null) {
+                writer.flush();
+            }
+            if (stream != null) {
+                stream.close();
+            } else if (contentLength >= 0) {
+                ((HttpServletResponse) getResponse()).setContentLengthLong(contentLength);
+            }
+        }
+
+        /**
+         * Called when the application failed instead of finishing the response. A body already being compressed is
+         * finished, which releases its deflater and sends what was compressed so far; a body still held back is
+         * dropped, so the container can send its error response in its place.
+         */
+        void abandon() {
+            if (stream != null) {
+                stream.abandon();
+            }
+        }
+
+        /**
+         * Give a 304 the ETag the client matched, suffix included, so that it names the representation the client
+         * holds rather than the plain one.
+         */
+        private void restoreEtagSuffix() {
+            String etag = getHeader("ETag");
+            if (ifNoneMatch == null || etag == null || !etag.endsWith("\"")) {
+                return;
+            }
+            for (String suffix : new String[] { "--gzip\"", "--deflate\"" }) {
+                String suffixed = etag.substring(0, etag.length() - 1) + suffix;
+                if (ifNoneMatch.contains(suffixed)) {
+                    setHeader("ETag", suffixed);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Buffers the first minSize bytes of a body, then either compresses everything written from there on, or, if the
+     * body ends first, sends the buffered bytes as they are.
+     */
+    private final class CompressingStream extends ServletOutputStream {
+        private final CompressingResponse wrapper;
+        private final HttpServletResponse response;
+        private final String encoding;
+        private byte[] buffer = new byte[Math.max(minSize, 1)];
+        private int count;
+        private OutputStream target;
+        private CountingStream counter;
+        private boolean closed;
+        /** Set once the application writes without blocking; the body is then sent as it is. */
+        private boolean nonBlocking;
+        /** The container's stream, once the body has started. */
+        private ServletOutputStream out;
+
+        CompressingStream(CompressingResponse wrapper, HttpServletResponse response, String encoding) {
+            this.wrapper = wrapper;
+            this.response = response;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+            if (target == null) {
+                if (count + length < minSize) {
+                    System.arraycopy(bytes, offset, buffer, count, length);
+                    count += length;
+                    return;
+                }
+                start(true);
+            }
+            writeTarget(bytes, offset, length);
+        }
+
+        /**
+         * A flush before minSize bytes have been written does nothing, so that the choice to compress is not made
+         * on a partial body. After that, a flush sends everything compressed so far.
+         */
+        @Override
+        public void flush() throws IOException {
+            if (target != null) {
+                long start = System.nanoTime();
+                target.flush();
+                recordCompression(start);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (target == null) {
+                start(false);
+            }
+            long start = System.nanoTime();
+            target.close();
+            recordCompression(start);
+        }
+
+        @Override
+        public boolean isReady() {
+            return out == null || out.isReady();
+        }
+
+        /**
+         * See CompressingResponse.abandon().
+         */
+        void abandon() {
+            if (closed) {
+                return;
+            }
+            if (counter == null) {
+                closed = true;
+                buffer = null;
+                return;
+            }
+            try {
+                close();
+            } catch (IOException e) {
+                //the client has gone away; closing has still released the deflater
+            }
+        }
+
+        /**
+         * Non-blocking writes are passed to the container as they are, uncompressed: compressing them would mean
+         * holding back compressed bytes whenever the container is not ready for them. If the body has already started
+         * compressing, the listener still gets the container's readiness, which is then only approximate.
+         */
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            try {
+                if (target == null) {
+                    nonBlocking = true;
+                    start(true);
+                }
+            } catch (IOException e) {
+                listener.onError(e);
+                return;
+            }
+            out.setWriteListener(listener);
+        }
+
+        private void start(boolean large) throws IOException {
+            out = response.getOutputStream();
+            boolean compress = large && !nonBlocking && isCompressible(response.getContentType())
+                    && response.getHeader("Content-Encoding") == null;
+            if (isCompressible(response.getContentType())) {
+                response.addHeader("Vary", "Accept-Encoding");
+            }
+            if (!compress) {
+                if (!large) {
+                    response.setContentLength(count);
+                } else if (wrapper.contentLength >= 0) {
+                    response.setContentLengthLong(wrapper.contentLength);
+                }
+                stats.uncompressedResponses.increment();
+                target = out;
+                if (count > 0) {
+                    target.write(buffer, 0, count);
+                }
+                buffer = null;
+                return;
+            }
+            response.setHeader("Content-Encoding", encoding);
+            String etag = response.getHeader("ETag");
+            if (etag != null && etag.endsWith("\"")) {
+                response.setHeader("ETag", etag.substring(0, etag.length() - 1) + "--" + encoding + "\"");
+            }
+            stats.compressedResponses.increment();
+            counter = new CountingStream(out);
+            target = "gzip".equals(encoding)
+                    ? new LeveledGzipStream(counter, level)
+                    : new LeveledDeflateStream(counter, level);
+            writeTarget(buffer, 0, count);
+            buffer = null;
+        }
+
+        private void writeTarget(byte[] bytes, int offset, int length) throws IOException {
+            if (counter == null) {
+                target.write(bytes, offset, length);
+                return;
+            }
+            stats.bytesIn.add(length);
+            long start = System.nanoTime();
+            target.write(bytes, offset, length);
+            recordCompression(start);
+        }
+
+        private void recordCompression(long start) {
+            if (counter != null) {
+                stats.compressionNanos.add(System.nanoTime() - start - counter.takeWriteNanos());
+            }
+        }
+    }
+
+    /**
+     * A gzip stream at a chosen compression level whose flush() pushes out everything compressed so far.
+     */
+    private static final class LeveledGzipStream extends GZIPOutputStream {
+        LeveledGzipStream(OutputStream out, int level) throws IOException {
+            super(out, 8192, true);
+            def.setLevel(level);
+        }
+    }
+
+    /**
+     * A zlib ("deflate" in HTTP) stream at a chosen compression level whose flush() pushes out everything compressed so
+     * far.
+     */
+    private static final class LeveledDeflateStream extends DeflaterOutputStream {
+        LeveledDeflateStream(OutputStream out, int level) {
+            super(out, new Deflater(level), 8192, true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                //the Deflater was created here rather than passed in, but DeflaterOutputStream only ends its own
+                def.end();
+            }
+        }
+    }
+
+    /**
+     * Counts compressed bytes on their way to the network, and the time spent writing them, so that time can be left
+     * out of the time spent compressing.
+     */
+    private final class CountingStream extends OutputStream {
+        private final OutputStream out;
+        private long writeNanos;
+
+        CountingStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            out.write(bytes, offset, length);
+            writeNanos += System.nanoTime() - start;
+            stats.bytesOut.add(length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = System.nanoTime();
+            out.flush();
+            writeNanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            out.close();
+            writeNanos += System.nanoTime() - start;
+        }
+
+        long takeWriteNanos() {
+            long nanos = writeNanos;
+            writeNanos = 0;
+            return nanos;
+        }
+    }
+}
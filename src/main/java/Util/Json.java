@@ -0,0 +1,33 @@
+package Util;
+
+import java.util.List;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import Model.Account;
+import Model.Message;
+
+/**
+ * The Json class holds the one ObjectMapper the application uses, along with readers and writers for the types the
+ * API sends and receives.
+ *
+ * Building an ObjectMapper is expensive, and each new mapper has to rediscover the serializers and deserializers for
+ * every class it meets. ObjectReader and ObjectWriter are immutable and thread-safe, so they are built once here and
+ * shared by every request.
+ */
+public final class Json {
+    public static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static final ObjectReader ACCOUNT_READER = MAPPER.readerFor(Account.class);
+    public static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+
+    public static final ObjectWriter ACCOUNT_WRITER = MAPPER.writerFor(Account.class);
+    public static final ObjectWriter MESSAGE_WRITER = MAPPER.writerFor(Message.class);
+    public static final ObjectWriter MESSAGE_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<Message>>(){});
+
+    private Json() {
+    }
+}
@@ -0,0 +1,83 @@
+package Util;
+
+/**
+ * The PrometheusText class builds a page of metrics in the Prometheus text exposition format (version 0.0.4), which
+ * Prometheus scrapes from GET /metrics.
+ *
+ * Each metric family is started with family(), which writes its HELP and TYPE lines, and followed by its samples.
+ */
+public class PrometheusText {
+    /**
+     * Content type of the text exposition format.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final StringBuilder text = new StringBuilder(4096);
+
+    /**
+     * Start a metric family.
+     * @param type "counter", "gauge", "summary" or "histogram"
+     */
+    public PrometheusText family(String name, String type, String help) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    /**
+     * Write one sample.
+     * @param labels label names and values, alternating
+     */
+    public PrometheusText sample(String name, double value, String... labels) {
+        writeName(name, labels);
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            text.append((long) value);
+        } else {
+            text.append(value);
+        }
+        text.append('\n');
+        return this;
+    }
+
+    /**
+     * Start a family with a single sample with no labels, the usual shape of a gauge.
+     */
+    public PrometheusText single(String name, String type, String help, double value) {
+        return family(name, type, help).sample(name, value);
+    }
+
+    private void writeName(String name, String[] labels) {
+        text.append(name);
+        if (labels.length > 0) {
+            text.append('{');
+            for (int i = 0; i + 1 < labels.length; i += 2) {
+                if (i > 0) {
+                    text.append(',');
+                }
+                text.append(labels[i]).append("=\"");
+                escape(labels[i + 1]);
+                text.append('"');
+            }
+            text.append('}');
+        }
+        text.append(' ');
+    }
+
+    private void escape(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                text.append('\\').append(c);
+            } else if (c == '\n') {
+                text.append("\\n");
+            } else {
+                text.append(c);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
@@ -0,0 +1,416 @@
+package Util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The QueryMetrics class times every statement run through the connection pool, keyed by the name of the query, so
+ * that a query growing slower as the tables grow shows up before users notice.
+ *
+ * Statements handed out by the pool are wrapped by instrument(). The time of a query is the time spent in execute
+ * plus the time spent in ResultSet.next(), so a caller doing slow work between rows (e.g. writing them to a client)
+ * does not make the query look slow. Rows are those read from the result set, or the update count of an update.
+ *
+ * A query is named after the constant holding its SQL, e.g. "MessageDAO.SELECT_MESSAGE_BY_ID", once its DAO has
+ * called nameQueries(); other SQL is named by its text.
+ *
+ * Executions taking longer than db.slowQueryMillis are logged with their SQL and bind parameters, and the latest are
+ * kept for getSlowQueries(). Parameters bound to a password column are never logged.
+ */
+public class QueryMetrics {
+    /**
+     * Executions taking at least this long are logged as slow; 0 logs every execution, a negative value none.
+     */
+    static final long SLOW_QUERY_MILLIS = Long.getLong("db.slowQueryMillis", 100);
+    /**
+     * Number of the latest slow queries kept for getSlowQueries().
+     */
+    static final int SLOW_QUERY_LOG_SIZE = Integer.getInteger("db.slowQueryLogSize", 100);
+    private static final int MAX_LOGGED_VALUE_LENGTH = 100;
+    private static final String REDACTED = "<redacted>";
+
+    private static final Map<String, String> names = new ConcurrentHashMap<>();
+    private static final Map<String, QueryMetrics> queries = new ConcurrentHashMap<>();
+    private static final ArrayDeque<SlowQuery> slowQueries = new ArrayDeque<>();
+    private static final LongAdder slowQueryCount = new LongAdder();
+    private static volatile long slowQueryMillis = SLOW_QUERY_MILLIS;
+
+    private static final Pattern INSERT = Pattern.compile(
+            "insert\\s+into\\s+\\w+\\s*\\(([^)]*)\\)\\s*values\\s*\\(([^)]*)\\)");
+    private static final Pattern COMPARED_COLUMN = Pattern.compile(
+            "(\\w+)\\s*(=|<>|!=|<=|>=|<|>|\\blike\\b|\\bin\\b|\\bany\\b)\\s*\\(?\\s*$");
+
+    private final String name;
+    private final String sql;
+    /**
+     * The column each placeholder is bound to, where it could be worked out from the SQL, by parameter index.
+     */
+    private final String[] columns;
+    private final boolean mentionsPassword;
+    private final Histogram latency = new Histogram();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private QueryMetrics(String name, String sql) {
+        this.name = name;
+        this.sql = sql;
+        this.columns = placeholderColumns(sql);
+        this.mentionsPassword = sql.toLowerCase(Locale.ROOT).contains("password");
+    }
+
+    /**
+     * Name every SQL string held in a static final String field of dao after that field, e.g.
+     * "AccountDAO.SELECT_ACCOUNT_BY_ID".
+     */
+    public static void nameQueries(Class<?> dao) {
+        for (Field field : dao.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers) && field.getType() == String.class) {
+                try {
+                    field.setAccessible(true);
+                    names.putIfAbsent((String) field.get(null), dao.getSimpleName() + "." + field.getName());
+                } catch (IllegalAccessException | RuntimeException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Wrap statement so that its executions are timed and counted against the query with the SQL provided.
+     */
+    public static PreparedStatement instrument(PreparedStatement statement, String sql) {
+        QueryMetrics metrics = queries.computeIfAbsent(sql,
+                key -> new QueryMetrics(names.getOrDefault(key, key.replaceAll("\\s+", " ").trim()), key));
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, new Execution(metrics, statement));
+    }
+
+    /**
+     * Change the slow query threshold from db.slowQueryMillis, e.g. to log every query while chasing a problem.
+     */
+    public static void setSlowQueryMillis(long millis) {
+        slowQueryMillis = millis;
+    }
+
+    /**
+     * @return the metrics of every query run so far
+     */
+    public static List<QueryMetrics> getAll() {
+        return new ArrayList<>(queries.values());
+    }
+
+    /**
+     * @return the latest slow queries, oldest first
+     */
+    public static List<SlowQuery> getSlowQueries() {
+        synchronized (slowQueries) {
+            return new ArrayList<>(slowQueries);
+        }
+    }
+
+    /**
+     * @return the number of slow queries since startup
+     */
+    public static long getSlowQueryCount() {
+        return slowQueryCount.sum();
+    }
+
+    public String getName() { return name; }
+    public String getSql() { return sql; }
+    public Histogram getLatency() { return latency; }
+    public long getRows() { return rows.sum(); }
+    public long getErrors() { return errors.sum(); }
+
+    private void record(long nanos, long rowCount, Map<Integer, Object> binds) {
+        latency.recordNanos(nanos);
+        rows.add(rowCount);
+        long millis = nanos / 1_000_000;
+        long threshold = slowQueryMillis;
+        if (threshold >= 0 && millis >= threshold) {
+            SlowQuery slowQuery = new SlowQuery(name, sql, describe(binds), millis, rowCount);
+            slowQueryCount.increment();
+            System.out.println(slowQuery);
+            synchronized (slowQueries) {
+                if (slowQueries.size() >= SLOW_QUERY_LOG_SIZE) {
+                    slowQueries.pollFirst();
+                }
+                if (SLOW_QUERY_LOG_SIZE > 0) {
+                    slowQueries.addLast(slowQuery);
+                }
+            }
+        }
+    }
+
+    /**
+     * Describe the bind parameters of an execution, leaving out the values of anything that might be a password: a
+     * parameter bound to a password column, or, in SQL mentioning a password, a parameter whose column is unknown.
+     */
+    String describe(Map<Integer, Object> binds) {
+        if (binds == null || binds.isEmpty()) {
+            return "[]";
+        }
+        StringBuilder description = new StringBuilder("[");
+        for (Map.Entry<Integer, Object> bind : binds.entrySet()) {
+            int index = bind.getKey();
+            String column = index < columns.length ? columns[index] : null;
+            if (description.length() > 1) {
+                description.append(", ");
+            }
+            description.append(column != null ? column : String.valueOf(index)).append('=');
+            if (column != null ? column.contains("password") : mentionsPassword) {
+                description.append(REDACTED);
+            } else {
+                description.append(format(bind.getValue()));
+            }
+        }
+        return description.append(']').toString();
+    }
+
+    private static String format(Object value) {
+        if (value instanceof Object[]) {
+            value = Arrays.toString((Object[]) value);
+        }
+        if (!(value instanceof String)) {
+            return String.valueOf(value);
+        }
+        String text = (String) value;
+        if (text.length() > MAX_LOGGED_VALUE_LENGTH) {
+            text = text.substring(0, MAX_LOGGED_VALUE_LENGTH) + "...";
+        }
+        return "'" + text + "'";
+    }
+
+    /**
+     * Work out which column each ? in sql is bound to, from an insert's column list or from the column the
+     * placeholder is compared with. Index 0 is unused, as JDBC parameters count from 1.
+     */
+    static String[] placeholderColumns(String sql) {
+        String lower = sql.toLowerCase(Locale.ROOT);
+        List<String> columns = new ArrayList<>();
+        columns.add(null);
+
+        Matcher insert = INSERT.matcher(lower);
+        boolean isInsert = insert.find();
+        String[] insertColumns = isInsert ? insert.group(1).split(",") : new String[0];
+        String[] insertValues = isInsert ? insert.group(2).split(",") : new String[0];
+        int insertValuesStart = isInsert ? insert.start(2) : -1;
+        int insertValuesEnd = isInsert ? insert.end(2) : -1;
+
+        for (int i = 0; i < lower.length(); i++) {
+            if (lower.charAt(i) != '?') {
+                continue;
+            }
+            String column = null;
+            if (i >= insertValuesStart && i < insertValuesEnd) {
+                int position = lower.substring(insertValuesStart, i).split(",", -1).length - 1;
+                if (position < insertColumns.length && position < insertValues.length) {
+                    column = insertColumns[position].trim();
+                }
+            } else {
+                Matcher compared = COMPARED_COLUMN.matcher(lower.substring(0, i));
+                if (compared.find()) {
+                    column = compared.group(1);
+                }
+            }
+            columns.add(column);
+        }
+        return columns.toArray(new String[0]);
+    }
+
+    /**
+     * One slow execution of a query.
+     */
+    public static class SlowQuery {
+        private final long at = System.currentTimeMillis();
+        private final String name;
+        private final String sql;
+        private final String binds;
+        private final long millis;
+        private final long rows;
+
+        SlowQuery(String name, String sql, String binds, long millis, long rows) {
+            this.name = name;
+            this.sql = sql;
+            this.binds = binds;
+            this.millis = millis;
+            this.rows = rows;
+        }
+
+        /** @return when the query finished, in milliseconds since the epoch */
+        public long getAt() { return at; }
+        public String getName() { return name; }
+        public String getSql() { return sql; }
+        /** @return the bind parameters, with passwords redacted */
+        public String getBinds() { return binds; }
+        public long getMillis() { return millis; }
+        public long getRows() { return rows; }
+
+        @Override
+        public String toString() {
+            return "Slow query " + name + " took " + millis + "ms for " + rows + " rows: " + sql + " " + binds;
+        }
+    }
+
+    /**
+     * The wrapper around one prepared statement. It remembers the parameters bound since the last execution, and
+     * times an execution from the call to execute until its result set is closed, the statement is closed, or the
+     * statement is run again.
+     */
+    private static final class Execution implements InvocationHandler {
+        private final QueryMetrics metrics;
+        private final PreparedStatement statement;
+        private TreeMap<Integer, Object> binds;
+        private boolean running;
+        private long nanos;
+        private long rows;
+
+        Execution(QueryMetrics metrics, PreparedStatement statement) {
+            this.metrics = metrics;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "executeQuery":
+                    finish();
+                    ResultSet resultSet = (ResultSet) time(method, args);
+                    running = true;
+                    return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                            new Class<?>[] { ResultSet.class }, new Rows(this, resultSet));
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                    finish();
+                    Number updated = (Number) time(method, args);
+                    rows = updated.longValue();
+                    running = true;
+                    finish();
+                    return updated;
+                case "executeBatch":
+                case "executeLargeBatch":
+                    finish();
+                    Object counts = time(method, args);
+                    rows = 0;
+                    if (counts instanceof int[]) {
+                        for (int count : (int[]) counts) {
+                            rows += Math.max(count, 0);
+                        }
+                    } else if (counts instanceof long[]) {
+                        for (long count : (long[]) counts) {
+                            rows += Math.max(count, 0);
+                        }
+                    }
+                    running = true;
+                    finish();
+                    return counts;
+                case "execute":
+                    finish();
+                    Object result = time(method, args);
+                    rows = Math.max(statement.getUpdateCount(), 0);
+                    running = true;
+                    finish();
+                    return result;
+                case "close":
+                    finish();
+                    break;
+                case "clearParameters":
+                    binds = null;
+                    break;
+                default:
+                    if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer
+                            && method.getDeclaringClass() == PreparedStatement.class) {
+                        if (binds == null) {
+                            binds = new TreeMap<>();
+                        }
+                        binds.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                    }
+            }
+            return invokeOn(statement, method, args);
+        }
+
+        private Object time(Method method, Object[] args) throws Throwable {
+            long start = System.nanoTime();
+            try {
+                return invokeOn(statement, method, args);
+            } catch (Throwable e) {
+                metrics.errors.increment();
+                throw e;
+            } finally {
+                nanos = System.nanoTime() - start;
+                rows = 0;
+            }
+        }
+
+        void finish() {
+            if (running) {
+                running = false;
+                metrics.record(nanos, rows, binds);
+            }
+        }
+    }
+
+    /**
+     * The wrapper around the result set of one execution, counting and timing the rows read.
+     */
+    private static final class Rows implements InvocationHandler {
+        private final Execution execution;
+        private final ResultSet resultSet;
+
+        Rows(Execution execution, ResultSet resultSet) {
+            this.execution = execution;
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next":
+                    long start = System.nanoTime();
+                    try {
+                        boolean more = (Boolean) invokeOn(resultSet, method, args);
+                        if (more) {
+                            execution.rows++;
+                        }
+                        return more;
+                    } finally {
+                        execution.nanos += System.nanoTime() - start;
+                    }
+                case "close":
+                    try {
+                        return invokeOn(resultSet, method, args);
+                    } finally {
+                        execution.finish();
+                    }
+                default:
+                    return invokeOn(resultSet, method, args);
+            }
+        }
+    }
+
+    private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package Util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The RateLimiter class gives each key (e.g. an account id) a token bucket holding up to burst tokens, refilled at
+ * ratePerSecond. Every request takes one token; a request finding the bucket empty is refused and told how long until
+ * the next token arrives.
+ *
+ * A bucket is kept as a single long, the time at which it will be full again (the "theoretical arrival time" of the
+ * generic cell rate algorithm), so taking a token is one compare-and-set with no locks.
+ *
+ * A bucket that has been full for longer than idleMillis is indistinguishable from a new one, so it is dropped. The
+ * buckets are swept at most once every idleMillis, by whichever request comes along, so memory stays bounded by the
+ * number of keys active within about two idle periods. A request racing with the sweep of its own bucket may get a
+ * fresh full bucket, which can only happen to a key that was idle anyway.
+ */
+public class RateLimiter {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final long idleNanos;
+    private final ConcurrentHashMap<Integer, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep;
+    private final AtomicLong allowed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * @param ratePerSecond tokens added to each bucket per second
+     * @param burst most tokens a bucket holds, i.e. requests allowed at once after a quiet spell
+     * @param idleMillis how long a bucket stays full before it is dropped
+     */
+    public RateLimiter(double ratePerSecond, int burst, long idleMillis) {
+        if (ratePerSecond <= 0 || burst < 1 || idleMillis < 0) {
+            throw new IllegalArgumentException("invalid rate limit: rate=" + ratePerSecond + "/s, burst=" + burst
+                    + ", idleMillis=" + idleMillis);
+        }
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000L / ratePerSecond));
+        this.toleranceNanos = intervalNanos * (burst - 1);
+        this.idleNanos = idleMillis * 1_000_000L;
+        this.nextSweep = new AtomicLong(System.nanoTime() + idleNanos);
+    }
+
+    /**
+     * Take a token from key's bucket.
+     *
+     * @return 0 if a token was taken and the request may go ahead, otherwise the milliseconds until a token will be
+     *         available (always at least 1)
+     */
+    public long tryAcquire(int key) {
+        long now = System.nanoTime();
+        sweep(now);
+        AtomicLong bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        while (true) {
+            long fullAt = bucket.get();
+            long start = fullAt - now > 0 ? fullAt : now;
+            long wait = start - now - toleranceNanos;
+            if (wait > 0) {
+                rejected.incrementAndGet();
+                return Math.max(1, (wait + 999_999) / 1_000_000);
+            }
+            if (bucket.compareAndSet(fullAt, start + intervalNanos)) {
+                allowed.incrementAndGet();
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Drop the buckets that have been full for longer than the idle period, if no sweep has run for that long.
+     */
+    private void sweep(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + idleNanos)) {
+            return;
+        }
+        buckets.forEach((key, bucket) -> {
+            long fullAt = bucket.get();
+            if (now - fullAt > idleNanos && buckets.remove(key, bucket)) {
+                evicted.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * @return counts of the requests allowed and refused so far, and of the buckets currently held
+     */
+    public Stats getStats() {
+        return new Stats(allowed.get(), rejected.get(), buckets.size(), evicted.get());
+    }
+
+    public static class Stats {
+        private final long allowed;
+        private final long rejected;
+        private final int buckets;
+        private final long evicted;
+
+        Stats(long allowed, long rejected, int buckets, long evicted) {
+            this.allowed = allowed;
+            this.rejected = rejected;
+            this.buckets = buckets;
+            this.evicted = evicted;
+        }
+
+        public long getAllowed() { return allowed; }
+        public long getRejected() { return rejected; }
+        public int getBuckets() { return buckets; }
+        public long getEvicted() { return evicted; }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "allowed=" + allowed +
+                    ", rejected=" + rejected +
+                    ", buckets=" + buckets +
+                    ", evicted=" + evicted +
+                    '}';
+        }
+    }
+}
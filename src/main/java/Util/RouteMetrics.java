@@ -0,0 +1,80 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The RouteMetrics class counts the requests served by one route, by response status, and the time they took.
+ * Recording a request allocates nothing, so it can be done on every request.
+ */
+public class RouteMetrics {
+    private static final int MAX_STATUS = 600;
+
+    private final String method;
+    private final String route;
+    private final AtomicLongArray statuses = new AtomicLongArray(MAX_STATUS);
+    private final Histogram latency = new Histogram();
+
+    /**
+     * @param method the HTTP method of the route, e.g. "GET"
+     * @param route the path of the route as it was registered, e.g. "/messages/{message_id}"
+     */
+    public RouteMetrics(String method, String route) {
+        this.method = method;
+        this.route = route;
+    }
+
+    /**
+     * Count one request.
+     * @param status the status code of the response
+     * @param nanos how long the request took to serve
+     */
+    public void record(int status, long nanos) {
+        statuses.incrementAndGet(status >= 0 && status < MAX_STATUS ? status : 0);
+        latency.recordNanos(nanos);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * @return the number of responses sent with status, or, for status 0, with a status outside 0-599
+     */
+    public long getStatusCount(int status) {
+        return statuses.get(status);
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Write this route's counters to out as Prometheus samples: http_requests_total by status, and
+     * http_request_duration_seconds quantiles, sum and count. The metric families must already have been started.
+     */
+    public void writeRequestCounts(PrometheusText out) {
+        for (int status = 0; status < MAX_STATUS; status++) {
+            long count = statuses.get(status);
+            if (count > 0) {
+                out.sample("http_requests_total", count,
+                        "method", method, "route", route, "status", String.valueOf(status));
+            }
+        }
+    }
+
+    /**
+     * @see #writeRequestCounts(PrometheusText)
+     */
+    public void writeLatency(PrometheusText out, double... quantiles) {
+        for (double quantile : quantiles) {
+            out.sample("http_request_duration_seconds", latency.getValueAtQuantileNanos(quantile) / 1e9,
+                    "method", method, "route", route, "quantile", String.valueOf(quantile));
+        }
+        out.sample("http_request_duration_seconds_sum", latency.getSumNanos() / 1e9, "method", method, "route", route);
+        out.sample("http_request_duration_seconds_count", latency.getCount(), "method", method, "route", route);
+    }
+}
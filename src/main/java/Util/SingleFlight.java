@@ -0,0 +1,87 @@
+package Util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * The SingleFlight class collapses concurrent loads of the same key into one: the first caller for a key runs the
+ * loader, and callers arriving while it runs wait for and share its result instead of issuing the same query again.
+ * Nothing is kept once the load finishes, so it only helps when identical requests overlap, such as many clients
+ * asking for one hot message at the moment it drops out of the cache.
+ *
+ * A caller that has just written something a running load may have missed calls forget(key) afterwards, so that
+ * callers from then on start a fresh load rather than share one that may be out of date.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class SingleFlight<K, V> {
+    /**
+     * Counters for one SingleFlight.
+     */
+    public static class Stats {
+        final LongAdder loads = new LongAdder();
+        final LongAdder collapsed = new LongAdder();
+
+        /** Loads run, each by the first caller for its key. */
+        public long getLoads() { return loads.sum(); }
+        /** Callers that shared a load already running instead of running their own. */
+        public long getCollapsed() { return collapsed.sum(); }
+
+        @Override
+        public String toString() {
+            return "SingleFlight{" +
+                    "loads=" + getLoads() +
+                    ", collapsed=" + getCollapsed() +
+                    '}';
+        }
+    }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Stats stats = new Stats();
+
+    /**
+     * Return loader's value for key, running it unless a load of key is already running, in which case wait for that
+     * load and return its value. If the load throws, every caller sharing it gets the exception.
+     */
+    public V load(K key, Function<? super K, ? extends V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            stats.collapsed.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        stats.loads.increment();
+        try {
+            V value = loader.apply(key);
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Stop callers from sharing any load of key already running; they start a new one instead.
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,240 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The StatementCache class keeps the PreparedStatements of one pooled connection open between borrows, keyed by their
+ * SQL text. Preparing the same SQL again on the same physical connection hands back the already-parsed statement
+ * instead of asking the database to parse and plan it a second time.
+ *
+ * Callers use the statements exactly as before: close() on a cached statement clears its parameters and puts it back
+ * in the cache instead of closing it. The least recently used statement is closed once the cache is full.
+ *
+ * A cache belongs to a single physical connection, and a connection is only ever borrowed by one caller at a time, so
+ * the cache itself needs no locking. Hit, miss and eviction counts are shared by every cache in the pool.
+ */
+public class StatementCache {
+
+    /**
+     * Counters shared by the statement caches of every connection in a pool.
+     */
+    public static class Counters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+
+        public long getHits() { return hits.sum(); }
+        public long getMisses() { return misses.sum(); }
+        public long getEvictions() { return evictions.sum(); }
+
+        /**
+         * @return the fraction of prepareStatement calls answered from a cache, between 0 and 1
+         */
+        public double getHitRate() {
+            long hits = getHits();
+            long total = hits + getMisses();
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "StatementCache{" +
+                    "hits=" + getHits() +
+                    ", misses=" + getMisses() +
+                    ", evictions=" + getEvictions() +
+                    '}';
+        }
+    }
+
+    private final Connection connection;
+    private final int maxSize;
+    private final Counters counters;
+    private final LinkedHashMap<Key, Entry> entries;
+
+    /**
+     * @param connection the physical connection statements are prepared on
+     * @param maxSize the number of distinct statements to keep open
+     * @param counters counters to record hits, misses and evictions in
+     */
+    public StatementCache(Connection connection, int maxSize, Counters counters) {
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.counters = counters;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Return a cached statement for the SQL provided, preparing and caching it on a miss.
+     *
+     * If the cached statement for this SQL is still open elsewhere (the caller prepared the same SQL twice without
+     * closing the first), a plain uncached statement is returned instead.
+     *
+     * @param sql the SQL text of the statement
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+     * @return a statement whose close() returns it to the cache
+     */
+    public PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(sql, autoGeneratedKeys);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.inUse) {
+                counters.misses.increment();
+                return connection.prepareStatement(sql, autoGeneratedKeys);
+            }
+            counters.hits.increment();
+            entry.inUse = true;
+        } else {
+            counters.misses.increment();
+            entry = new Entry(connection.prepareStatement(sql, autoGeneratedKeys));
+            //in use before anything is evicted, so the new statement is never the one closed to make room
+            entry.inUse = true;
+            entries.put(key, entry);
+            evictIfFull();
+        }
+        return entry.checkOut();
+    }
+
+    private void evictIfFull() {
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxSize && eldest.hasNext()) {
+            Entry entry = eldest.next().getValue();
+            if (!entry.inUse) {
+                eldest.remove();
+                counters.evictions.increment();
+                closeQuietly(entry.statement);
+            }
+        }
+    }
+
+    /**
+     * Called when the owning connection goes back to the pool. Statements the borrower forgot to close are returned
+     * to the cache, and the borrower's handles to them stop working.
+     */
+    public void reclaim() {
+        for (Entry entry : entries.values()) {
+            if (entry.inUse) {
+                entry.checkIn();
+            }
+        }
+    }
+
+    /**
+     * Close every cached statement. Called when the owning connection is closed for good.
+     */
+    public void close() {
+        for (Entry entry : entries.values()) {
+            closeQuietly(entry.statement);
+        }
+        entries.clear();
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private static final class Key {
+        private final String sql;
+        private final int autoGeneratedKeys;
+
+        Key(String sql, int autoGeneratedKeys) {
+            this.sql = sql;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return autoGeneratedKeys == key.autoGeneratedKeys && sql.equals(key.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return sql.hashCode() * 31 + autoGeneratedKeys;
+        }
+    }
+
+    /**
+     * A cached statement. Each check-out gets its own handle; a handle stops working once the statement has been
+     * checked back in, so a stale handle can never touch a statement that has since been lent to someone else.
+     */
+    private static final class Entry {
+        final PreparedStatement statement;
+        boolean inUse;
+        int generation;
+
+        Entry(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        PreparedStatement checkOut() {
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, new Handle(this, generation));
+        }
+
+        void checkIn() {
+            generation++;
+            inUse = false;
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+                statement.clearWarnings();
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    private static final class Handle implements InvocationHandler {
+        private final Entry entry;
+        private final int generation;
+
+        Handle(Entry entry, int generation) {
+            this.entry = entry;
+            this.generation = generation;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            boolean live = entry.generation == generation;
+            switch (method.getName()) {
+                case "close":
+                    if (live) {
+                        entry.checkIn();
+                    }
+                    return null;
+                case "isClosed":
+                    return !live;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    if (!live) {
+                        throw new SQLException("Statement is closed");
+                    }
+                    try {
+                        return method.invoke(entry.statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package Util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The Versions class counts changes to rows identified by an int key, so that a response built from those rows can
+ * be labelled with a version (an HTTP ETag) and a client holding that version can be told nothing has changed
+ * without the rows being read again.
+ *
+ * Keys share a fixed number of counters, so a change to one key also changes the version of the keys sharing its
+ * counter. That only costs those keys a full response; a key's version never stays the same across a change.
+ *
+ * Versions start at a random epoch, so versions handed out by an earlier run of the application are never mistaken
+ * for current ones.
+ */
+public class Versions {
+    private final String epoch;
+    private final AtomicLongArray counters;
+
+    /**
+     * @param stripes the number of counters keys are spread over; more means fewer needless version changes
+     */
+    public Versions(int stripes) {
+        this.epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        this.counters = new AtomicLongArray(stripes);
+    }
+
+    /**
+     * Record a change to key. Call this after the change is visible to readers, so that a reader never sees the new
+     * version alongside the old rows.
+     */
+    public void bump(int key) {
+        counters.incrementAndGet(stripe(key));
+    }
+
+    /**
+     * @return the current version of key, as an opaque string
+     */
+    public String get(int key) {
+        return epoch + "-" + Long.toHexString(counters.get(stripe(key)));
+    }
+
+    private int stripe(int key) {
+        int h = key * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), counters.length());
+    }
+}
@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.MessageService;
+import Util.Cache;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AccountTimelineTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * A message posted after GET localhost:8080/accounts/1/messages was served should appear in the next listing, in
+     * time order, without the account's messages being read from the database again.
+     */
+    @Test
+    public void postedMessageIsAddedToTimeline() throws IOException, InterruptedException {
+        Assert.assertEquals(1, getMessages().size());
+        Assert.assertEquals(200, send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"older message\", " +
+                        "\"time_posted_epoch\": 1669947000}"))
+                .header("Content-Type", "application/json")).statusCode());
+
+        List<Message> expectedResult = List.of(
+                new Message(2, 1, "older message", 1669947000),
+                new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expectedResult, getMessages());
+
+        Cache.Stats stats = MessageService.getTimelineCacheStats();
+        Assert.assertEquals(1, stats.getMisses());
+        Assert.assertEquals(1, stats.getHits());
+    }
+
+    /**
+     * After PATCH localhost:8080/messages/1, GET localhost:8080/accounts/1/messages should list the updated text.
+     */
+    @Test
+    public void updatedMessageIsPatchedInTimeline() throws IOException, InterruptedException {
+        getMessages();
+        Assert.assertEquals(200, send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")).statusCode());
+
+        Assert.assertEquals(List.of(new Message(1, 1, "updated message", 1669947792)), getMessages());
+    }
+
+    /**
+     * After DELETE localhost:8080/messages/1, GET localhost:8080/accounts/1/messages should be an empty list.
+     */
+    @Test
+    public void deletedMessageIsRemovedFromTimeline() throws IOException, InterruptedException {
+        getMessages();
+        Assert.assertEquals(200, send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()).statusCode());
+
+        Assert.assertTrue(getMessages().isEmpty());
+    }
+
+    private List<Message> getMessages() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages")));
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
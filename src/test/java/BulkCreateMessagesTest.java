@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class BulkCreateMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/bulk with a JSON list of valid messages
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON list of the created messages, with their new message_ids, in the order sent
+     */
+    @Test
+    public void bulkCreateMessagesJsonList() throws IOException, InterruptedException {
+        HttpResponse<String> response = postBulk("application/json", "[" +
+                "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947800}," +
+                "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947801}]");
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(2, 1, "first", 1669947800));
+        expectedResult.add(new Message(3, 1, "second", 1669947801));
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+        Assert.assertEquals(3, countMessages());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/bulk with newline-delimited JSON
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON list of the created messages
+     */
+    @Test
+    public void bulkCreateMessagesNdjson() throws IOException, InterruptedException {
+        HttpResponse<String> response = postBulk("application/x-ndjson",
+                "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947800}\n" +
+                "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947801}\n");
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(2, actualResult.size());
+        Assert.assertEquals(new Message(3, 1, "second", 1669947801), actualResult.get(1));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/bulk where one message is blank
+     * 
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body: 
+     *  None of the messages are persisted
+     */
+    @Test
+    public void bulkCreateMessagesOneInvalidText() throws IOException, InterruptedException {
+        HttpResponse<String> response = postBulk("application/json", "[" +
+                "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947800}," +
+                "{\"posted_by\":1, \"message_text\": \"\", \"time_posted_epoch\": 1669947801}]");
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals("", response.body());
+        Assert.assertEquals(1, countMessages());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/bulk where one author does not exist
+     * 
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body: 
+     *  None of the messages are persisted
+     */
+    @Test
+    public void bulkCreateMessagesUserNotInDb() throws IOException, InterruptedException {
+        HttpResponse<String> response = postBulk("application/json", "[" +
+                "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947800}," +
+                "{\"posted_by\":3, \"message_text\": \"second\", \"time_posted_epoch\": 1669947801}]");
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals("", response.body());
+        Assert.assertEquals(1, countMessages());
+    }
+
+    private HttpResponse<String> postBulk(String contentType, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/bulk"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", contentType)
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private int countMessages() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){}).size();
+    }
+}
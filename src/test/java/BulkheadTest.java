@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.Bulkhead;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class BulkheadTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+    CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with handlers on the bulkheads, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI(false, true);
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages while every scan thread is busy and the scan queue is full
+     *
+     * Expected Response:
+     *  Status Code: 503, with a Retry-After header
+     *  while GET localhost:8080/messages/1, served by the read bulkhead, still gets a 200
+     */
+    @Test
+    public void fullScanBulkheadRejectsOnlyScans() throws IOException, InterruptedException {
+        Bulkhead scan = socialMediaController.getBulkheads().stream()
+                .filter(bulkhead -> bulkhead.getName().equals("scan"))
+                .findFirst().orElseThrow();
+        fill(scan);
+
+        HttpResponse<String> rejected = get("/messages");
+        Assert.assertEquals(503, rejected.statusCode());
+        Assert.assertTrue(rejected.headers().firstValue("Retry-After").isPresent());
+        //one refused by fill(), one by the request
+        Assert.assertEquals(2, scan.getStats().getRejected());
+
+        Assert.assertEquals(200, get("/messages/1").statusCode());
+
+        release.countDown();
+        while (scan.getStats().getQueued() > 0) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(200, get("/messages").statusCode());
+    }
+
+    /**
+     * A task submitted to a full bulkhead is refused without being run or queued.
+     */
+    @Test
+    public void fullBulkheadRefusesTasks() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1);
+        try {
+            fill(bulkhead);
+            Bulkhead.Stats stats = bulkhead.getStats();
+            Assert.assertEquals(1, stats.getActive());
+            Assert.assertEquals(1, stats.getQueued());
+            Assert.assertEquals(1, stats.getRejected());
+
+            release.countDown();
+            while (bulkhead.getStats().getQueued() > 0) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals("done", bulkhead.submit(() -> "done").get());
+        } finally {
+            bulkhead.shutdown();
+        }
+    }
+
+    /**
+     * Submit tasks blocking on release until the bulkhead refuses one.
+     */
+    private void fill(Bulkhead bulkhead) throws InterruptedException {
+        while (true) {
+            try {
+                bulkhead.submit(() -> {
+                    release.await();
+                    return null;
+                });
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        while (bulkhead.getStats().getActive() < bulkhead.getStats().getThreads()) {
+            Thread.sleep(10);
+        }
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,80 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.Cache;
+
+public class CacheTest {
+
+    /**
+     * A cache holding its maximum number of entries should evict the least recently used one, not the oldest.
+     */
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        Cache<Integer, String> cache = new Cache<>(2, 0);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        Assert.assertEquals("one", cache.get(1));
+        cache.put(3, "three");
+
+        Assert.assertEquals("one", cache.get(1));
+        Assert.assertNull(cache.get(2));
+        Assert.assertEquals("three", cache.get(3));
+        Assert.assertEquals(1, cache.getStats().getEvictions());
+    }
+
+    /**
+     * An entry should stop being served once its time to live has passed.
+     */
+    @Test
+    public void entryExpiresAfterTtl() throws InterruptedException {
+        Cache<Integer, String> cache = new Cache<>(10, 50);
+        cache.put(1, "one");
+        Assert.assertEquals("one", cache.get(1));
+        Thread.sleep(100);
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals(1, cache.getStats().getExpirations());
+        Assert.assertEquals(0.5, cache.getStats().getHitRate(), 0.0);
+    }
+
+    /**
+     * A read-through lookup should call the loader once and then answer from the cache. Null results are not cached.
+     */
+    @Test
+    public void readThroughCachesLoadedValues() {
+        Cache<Integer, String> cache = new Cache<>(10, 0);
+        int[] loads = {0};
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("one", cache.get(1, key -> { loads[0]++; return "one"; }));
+            Assert.assertNull(cache.get(2, key -> { loads[0]++; return null; }));
+        }
+        Assert.assertEquals(4, loads[0]);
+        Assert.assertEquals(1, cache.size());
+    }
+
+    /**
+     * A value loaded while its key was being invalidated may already be out of date, so it should not be cached.
+     */
+    @Test
+    public void invalidationDuringLoadIsNotOverwritten() {
+        Cache<Integer, String> cache = new Cache<>(10, 0);
+        String loaded = cache.get(1, key -> {
+            cache.invalidate(key);
+            return "stale";
+        });
+        Assert.assertEquals("stale", loaded);
+        Assert.assertNull(cache.get(1));
+    }
+
+    /**
+     * A read-through lookup may give each loaded value its own time to live.
+     */
+    @Test
+    public void loadedValueUsesItsOwnTtl() throws InterruptedException {
+        Cache<Integer, String> cache = new Cache<>(10, 0);
+        cache.get(1, key -> "short", value -> 50);
+        cache.get(2, key -> "long");
+        Thread.sleep(100);
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals("long", cache.get(2));
+    }
+}
@@ -0,0 +1,186 @@
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.ColumnarMessageDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.DatasetGenerator;
+
+public class ColumnarMessageDAOTest {
+    static final int ACCOUNTS = 20;
+    static final int MESSAGES = 3000;
+
+    MessageDAO messageDAO;
+    ColumnarMessageDAO columnarDAO;
+
+    /**
+     * Before every test, fill the database with a generated data set and load it into a ColumnarMessageDAO.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        new DatasetGenerator(ACCOUNTS, MESSAGES, 1.0, 3600, 5).populate();
+        messageDAO = new MessageDAO();
+        columnarDAO = new ColumnarMessageDAO(messageDAO);
+    }
+
+    /**
+     * Every read gives the same answer from memory as from the database.
+     */
+    @Test
+    public void readsMatchTheDatabase() throws IOException {
+        Assert.assertEquals(MESSAGES, columnarDAO.size());
+        assertSameAsDatabase();
+        Assert.assertNull(columnarDAO.getMessageByID(MESSAGES + 1));
+        Assert.assertTrue(columnarDAO.getMessagesByAccountID(ACCOUNTS + 1).isEmpty());
+        Assert.assertTrue(columnarDAO.getRecentMessagesByAccountID(-1, 10).isEmpty());
+    }
+
+    /**
+     * Writes reach the database, and reads from memory see them, including messages posted out of time order and
+     * messages moved to another account.
+     */
+    @Test
+    public void writesGoThroughToTheDatabase() throws IOException {
+        Message inserted = columnarDAO.insertMessage(new Message(2, "new message", DatasetGenerator.START_EPOCH + 10));
+        Assert.assertEquals(inserted, messageDAO.getMessageByID(inserted.getMessage_id()));
+        Message backdated = columnarDAO.insertMessage(new Message(2, "backdated message", 0));
+        Assert.assertEquals(backdated, columnarDAO.getMessagesByAccountID(2).get(0));
+        Assert.assertNull(columnarDAO.insertMessage(new Message(9999, "no such account", 0)));
+
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            batch.add(new Message(1 + i % 3, "batched message " + i, DatasetGenerator.START_EPOCH + 3600 + i));
+        }
+        Assert.assertEquals(10, columnarDAO.insertMessages(batch, 4).size());
+
+        Message updated = columnarDAO.updateMessageText(5, "updated text");
+        Assert.assertEquals("updated text", updated.getMessage_text());
+        Assert.assertNull(columnarDAO.updateMessageText(MESSAGES + 100, "nothing"));
+
+        Message moved = new Message(7, 3, "moved message", 1);
+        columnarDAO.updateMessage(7, moved);
+        Assert.assertEquals(moved, columnarDAO.getMessagesByAccountID(3).get(0));
+
+        Message deleted = columnarDAO.deleteMessageByID(9);
+        Assert.assertNotNull(deleted);
+        Assert.assertNull(columnarDAO.getMessageByID(9));
+        Assert.assertNull(columnarDAO.deleteMessageByID(9));
+        Assert.assertFalse(columnarDAO.getMessagesByAccountID(deleted.getPosted_by()).contains(deleted));
+
+        Assert.assertEquals(MESSAGES + 12 - 1, columnarDAO.size());
+        assertSameAsDatabase();
+        //and a fresh load sees the same
+        columnarDAO = new ColumnarMessageDAO(messageDAO);
+        assertSameAsDatabase();
+    }
+
+    /**
+     * Readers never miss a message that exists, nor see a half-written one, while a writer adds and deletes others.
+     */
+    @Test
+    public void readersSeeConsistentMessagesDuringWrites() throws InterruptedException {
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger failures = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 300; i++) {
+                Message inserted = columnarDAO.insertMessage(new Message(1 + i % ACCOUNTS, "churn " + i, i));
+                if (i % 2 == 0) {
+                    columnarDAO.deleteMessageByID(inserted.getMessage_id());
+                }
+            }
+            writing.set(false);
+        });
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            readers.add(new Thread(() -> {
+                int id = 1;
+                while (writing.get()) {
+                    Message message = columnarDAO.getMessageByID(id);
+                    if (message == null || message.getMessage_id() != id || message.getMessage_text() == null) {
+                        failures.incrementAndGet();
+                    }
+                    for (Message recent : columnarDAO.getRecentMessagesByAccountID(1 + id % ACCOUNTS, 20)) {
+                        if (recent.getPosted_by() != 1 + id % ACCOUNTS) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    id = id % MESSAGES + 1;
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+        writer.start();
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        Assert.assertEquals(0, failures.get());
+        Assert.assertEquals(MESSAGES + 150, columnarDAO.size());
+    }
+
+    /**
+     * Readers never see a message half moved to another account, with its new posted_by but its old time.
+     */
+    @Test
+    public void readersNeverSeeHalfUpdatedMessages() throws InterruptedException {
+        Message first = new Message(1, 1, "on account 1", 1000);
+        Message second = new Message(1, 2, "on account 2", 2000);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger failures = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 500; i++) {
+                columnarDAO.updateMessage(1, i % 2 == 0 ? second : first);
+            }
+            writing.set(false);
+        });
+        Thread reader = new Thread(() -> {
+            while (writing.get()) {
+                Message message = columnarDAO.getMessageByID(1);
+                if (!first.equals(message) && !second.equals(message)) {
+                    failures.incrementAndGet();
+                }
+            }
+        });
+        columnarDAO.updateMessage(1, first);
+        reader.start();
+        writer.start();
+        writer.join();
+        reader.join();
+        Assert.assertEquals(0, failures.get());
+        Assert.assertEquals(first, columnarDAO.getMessageByID(1));
+    }
+
+    private void assertSameAsDatabase() throws IOException {
+        Assert.assertEquals(messageDAO.getAllMessages(), columnarDAO.getAllMessages());
+        List<Message> streamed = new ArrayList<>();
+        columnarDAO.streamAllMessages(streamed::add);
+        Assert.assertEquals(messageDAO.getAllMessages(), streamed);
+        for (int id = 1; id <= MESSAGES; id += 97) {
+            Assert.assertEquals(messageDAO.getMessageByID(id), columnarDAO.getMessageByID(id));
+            Assert.assertEquals(messageDAO.getMessagesAfter(id, 25), columnarDAO.getMessagesAfter(id, 25));
+        }
+        for (int account = 1; account <= ACCOUNTS; account++) {
+            List<Message> timeline = messageDAO.getMessagesByAccountID(account);
+            Assert.assertEquals(timeline, columnarDAO.getMessagesByAccountID(account));
+            Assert.assertEquals(messageDAO.getRecentMessagesByAccountID(account, 10),
+                    columnarDAO.getRecentMessagesByAccountID(account, 10));
+            if (!timeline.isEmpty()) {
+                Message middle = timeline.get(timeline.size() / 2);
+                Assert.assertEquals(
+                        messageDAO.getMessagesByAccountIDAfter(account, middle.getTime_posted_epoch(),
+                                middle.getMessage_id(), 10),
+                        columnarDAO.getMessagesByAccountIDAfter(account, middle.getTime_posted_epoch(),
+                                middle.getMessage_id(), 10));
+            }
+        }
+    }
+}
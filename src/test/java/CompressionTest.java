@@ -0,0 +1,199 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+
+public class CompressionTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, create a new webClient and ObjectMapper for
+     * interacting locally on the web, and post enough messages that the list of all messages is worth compressing.
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"posted_by\":1,\"message_text\":\"bulk message ").append(i)
+                    .append("\",\"time_posted_epoch\":1669947792}");
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/bulk"))
+                .POST(HttpRequest.BodyPublishers.ofString(body.append("]").toString()))
+                .build();
+        Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages accepting gzip
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the JSON list of all 101 messages, gzipped and smaller than the plain list
+     */
+    @Test
+    public void largeListIsGzipped() throws IOException, InterruptedException {
+        HttpResponse<byte[]> plain = get("/messages", null, null);
+        HttpResponse<byte[]> response = get("/messages", "gzip, deflate", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+        Assert.assertTrue(response.body().length < plain.body().length / 2);
+
+        byte[] body = new GZIPInputStream(new ByteArrayInputStream(response.body())).readAllBytes();
+        Assert.assertArrayEquals(plain.body(), body);
+        Assert.assertEquals(101, objectMapper.readValue(body, new TypeReference<List<Message>>(){}).size());
+        Assert.assertTrue(socialMediaController.getCompressionStats().getBytesSaved() > 0);
+    }
+
+    /**
+     * A streamed NDJSON list should be compressed as it is written, here with deflate, the only encoding accepted.
+     */
+    @Test
+    public void streamedListIsDeflated() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = get("/messages", "gzip;q=0, deflate", "application/x-ndjson");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("deflate", response.headers().firstValue("Content-Encoding").orElse(null));
+
+        InputStream body = new InflaterInputStream(new ByteArrayInputStream(response.body()));
+        String[] lines = new String(body.readAllBytes(), StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(101, lines.length);
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792),
+                objectMapper.readValue(lines[0], Message.class));
+    }
+
+    /**
+     * A body smaller than the minimum size should be sent as it is, with its Content-Length.
+     */
+    @Test
+    public void smallResponseIsNotCompressed() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = get("/messages/1", "gzip", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.headers().firstValue("Content-Encoding").isPresent());
+        Assert.assertEquals(String.valueOf(response.body().length),
+                response.headers().firstValue("Content-Length").orElse(null));
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792),
+                objectMapper.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * The ETag of a gzipped response should still be recognised in If-None-Match, and the 304 should carry the same
+     * ETag back.
+     */
+    @Test
+    public void gzippedEtagIsRecognised() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = get("/messages", "gzip", null);
+        String etag = response.headers().firstValue("ETag").orElseThrow();
+        Assert.assertTrue(etag.endsWith("--gzip\""));
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .header("Accept-Encoding", "gzip")
+                .header("If-None-Match", etag)
+                .build();
+        HttpResponse<byte[]> notModified = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        Assert.assertEquals(304, notModified.statusCode());
+        Assert.assertEquals(etag, notModified.headers().firstValue("ETag").orElse(null));
+    }
+
+    /**
+     * A handler writing without blocking should get its body through, sent as it is, rather than an error.
+     */
+    @Test
+    public void nonBlockingWriteIsPassedThrough() throws IOException, InterruptedException {
+        byte[] text = "plain text ".repeat(200).getBytes(StandardCharsets.UTF_8);
+        //Javalin starts the request's async mode once the future is handed over, so write a little later
+        app.get("/nonblocking", ctx -> ctx.future(() -> CompletableFuture.runAsync(() -> { },
+                CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS))
+                .thenCompose(ready -> writeWithoutBlocking(ctx, text))));
+        HttpResponse<byte[]> response = get("/nonblocking", "gzip", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.headers().firstValue("Content-Encoding").isPresent());
+        Assert.assertArrayEquals(text, response.body());
+    }
+
+    private static CompletableFuture<Void> writeWithoutBlocking(Context ctx, byte[] text) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            ServletOutputStream out = ctx.res().getOutputStream();
+            ctx.contentType("text/plain");
+            out.setWriteListener(new WriteListener() {
+                boolean written;
+
+                @Override
+                public void onWritePossible() throws IOException {
+                    while (out.isReady()) {
+                        if (written) {
+                            done.complete(null);
+                            return;
+                        }
+                        out.write(text);
+                        written = true;
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    done.completeExceptionally(t);
+                }
+            });
+        } catch (IOException e) {
+            done.completeExceptionally(e);
+        }
+        return done;
+    }
+
+    private HttpResponse<byte[]> get(String path, String acceptEncoding, String accept)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path));
+        if (acceptEncoding != null) {
+            request.header("Accept-Encoding", acceptEncoding);
+        }
+        if (accept != null) {
+            request.header("Accept", accept);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
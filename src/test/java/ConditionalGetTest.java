@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 with the ETag from an earlier response
+     *
+     * Expected Response:
+     *  Status Code: 304
+     *  Response Body: empty, and the message is not read again
+     */
+    @Test
+    public void getMessageByIdNotModified() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages/1", null);
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> second = get("/messages/1", etag);
+        Assert.assertEquals(304, second.statusCode());
+        Assert.assertEquals("", second.body());
+        Assert.assertEquals(etag, second.headers().firstValue("ETag").orElse(null));
+        Assert.assertEquals(1, MessageService.getMessageCacheStats().getMisses()
+                + MessageService.getMessageCacheStats().getHits());
+    }
+
+    /**
+     * Updating a message should change the ETag of the message and of its author's list of messages, so the old
+     * ETags get a full response.
+     */
+    @Test
+    public void updateChangesEtags() throws IOException, InterruptedException {
+        String messageEtag = get("/messages/1", null).headers().firstValue("ETag").orElseThrow();
+        String listEtag = get("/accounts/1/messages", null).headers().firstValue("ETag").orElseThrow();
+        String allEtag = get("/messages", null).headers().firstValue("ETag").orElseThrow();
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> message = get("/messages/1", messageEtag);
+        Assert.assertEquals(200, message.statusCode());
+        Assert.assertTrue(message.body().contains("updated message"));
+        Assert.assertEquals(200, get("/accounts/1/messages", listEtag).statusCode());
+        Assert.assertEquals(200, get("/messages", allEtag).statusCode());
+    }
+
+    /**
+     * A malformed page request is still a client error, whatever If-None-Match says.
+     */
+    @Test
+    public void badPageRequestIgnoresIfNoneMatch() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?limit=0", "*").statusCode());
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,187 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.StatementCache;
+
+public class ConnectionPoolTest {
+    JdbcDataSource dataSource;
+    ConnectionPool pool;
+
+    /**
+     * Before every test, create a small pool over a private in-memory database so the tests do not share connections
+     * with the application's pool.
+     */
+    @Before
+    public void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        pool = new ConnectionPool(dataSource, 0, 2, 200, 60_000, 5_000, 0, 4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Closing a borrowed connection should hand the same physical connection back out on the next borrow.
+     */
+    @Test
+    public void closedConnectionIsReused() throws SQLException {
+        Connection first = pool.getConnection();
+        first.close();
+        Connection second = pool.getConnection();
+        second.close();
+
+        ConnectionPool.Stats stats = pool.getStats();
+        Assert.assertEquals(1, stats.getCreated());
+        Assert.assertEquals(2, stats.getAcquired());
+        Assert.assertEquals(0, stats.getActive());
+        Assert.assertEquals(1, stats.getIdle());
+    }
+
+    /**
+     * Once maxSize connections are borrowed, the next borrow should time out rather than open another connection.
+     */
+    @Test
+    public void borrowBeyondMaxSizeTimesOut() throws SQLException {
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        Assert.assertEquals(1.0, pool.getStats().getSaturation(), 0.0);
+        try {
+            pool.getConnection();
+            Assert.fail("expected the third borrow to time out");
+        } catch (SQLException e) {
+            Assert.assertEquals(1, pool.getStats().getTimeouts());
+        } finally {
+            first.close();
+            second.close();
+        }
+        Assert.assertEquals(2, pool.getStats().getTotal());
+    }
+
+    /**
+     * A returned connection handle is dead: using it again should fail, and closing it again should not return the
+     * physical connection to the pool twice.
+     */
+    @Test
+    public void closedHandleCannotBeUsed() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.close();
+        connection.close();
+        Assert.assertTrue(connection.isClosed());
+        Assert.assertEquals(1, pool.getStats().getIdle());
+        try {
+            connection.createStatement();
+            Assert.fail("expected a closed connection to reject statements");
+        } catch (SQLException e) {
+            Assert.assertEquals("Connection is closed", e.getMessage());
+        }
+    }
+
+    /**
+     * A transaction left open by a borrower should be rolled back before the connection is lent out again.
+     */
+    @Test
+    public void openTransactionIsRolledBackOnReturn() throws SQLException {
+        Connection setup = pool.getConnection();
+        setup.createStatement().execute("create table if not exists pool_test (id int)");
+        setup.createStatement().execute("delete from pool_test");
+        setup.close();
+
+        Connection connection = pool.getConnection();
+        connection.setAutoCommit(false);
+        connection.createStatement().execute("insert into pool_test values (1)");
+        connection.close();
+
+        Connection next = pool.getConnection();
+        Assert.assertTrue(next.getAutoCommit());
+        ResultSet rs = next.createStatement().executeQuery("select count(*) from pool_test");
+        rs.next();
+        Assert.assertEquals(0, rs.getInt(1));
+        next.close();
+    }
+
+    /**
+     * Preparing the same SQL on the next borrow of a connection should be answered from its statement cache, and the
+     * handle from the first borrow should no longer work.
+     */
+    @Test
+    public void preparedStatementIsCachedAcrossBorrows() throws SQLException {
+        Connection connection = pool.getConnection();
+        PreparedStatement first = connection.prepareStatement("select ? from dual");
+        first.setInt(1, 1);
+        first.executeQuery().close();
+        first.close();
+        connection.close();
+
+        connection = pool.getConnection();
+        PreparedStatement second = connection.prepareStatement("select ? from dual");
+        second.setInt(1, 2);
+        ResultSet rs = second.executeQuery();
+        rs.next();
+        Assert.assertEquals(2, rs.getInt(1));
+        rs.close();
+        second.close();
+        connection.close();
+
+        StatementCache.Counters counters = pool.getStatementCacheCounters();
+        Assert.assertEquals(1, counters.getMisses());
+        Assert.assertEquals(1, counters.getHits());
+        Assert.assertTrue(first.isClosed());
+        try {
+            first.executeQuery();
+            Assert.fail("expected a returned statement handle to be unusable");
+        } catch (SQLException e) {
+            Assert.assertEquals("Statement is closed", e.getMessage());
+        }
+    }
+
+    /**
+     * Preparing the same SQL twice without closing the first statement should give two independent statements.
+     */
+    @Test
+    public void samePreparedStatementOpenTwiceIsNotShared() throws SQLException {
+        Connection connection = pool.getConnection();
+        PreparedStatement first = connection.prepareStatement("select ? from dual");
+        PreparedStatement second = connection.prepareStatement("select ? from dual");
+        first.setInt(1, 1);
+        second.setInt(1, 2);
+        ResultSet rs = first.executeQuery();
+        rs.next();
+        Assert.assertEquals(1, rs.getInt(1));
+        ConnectionUtil.close(rs, first, second, connection);
+        Assert.assertEquals(2, pool.getStatementCacheCounters().getMisses());
+    }
+
+    /**
+     * With room for one statement, preparing a second while the first is still open should not evict and close the
+     * second to make room.
+     */
+    @Test
+    public void newStatementIsNotEvictedFromFullCache() throws SQLException {
+        pool.shutdown();
+        pool = new ConnectionPool(dataSource, 0, 2, 200, 60_000, 5_000, 0, 1);
+        Connection connection = pool.getConnection();
+        PreparedStatement first = connection.prepareStatement("select ? from dual");
+        PreparedStatement second = connection.prepareStatement("select ?, ? from dual");
+        second.setInt(1, 1);
+        second.setInt(2, 2);
+        ResultSet rs = second.executeQuery();
+        rs.next();
+        Assert.assertEquals(2, rs.getInt(2));
+        ConnectionUtil.close(rs, second, first, connection);
+    }
+}
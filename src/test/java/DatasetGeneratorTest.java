@@ -0,0 +1,70 @@
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.DatasetGenerator;
+
+public class DatasetGeneratorTest {
+
+    /**
+     * Before every test, reset the database.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * A generated data set has the rows asked for, with the busiest accounts first, valid message texts and times that
+     * rise with the message ids.
+     */
+    @Test
+    public void populatesSkewedTimeOrderedMessages() throws SQLException {
+        new DatasetGenerator(50, 5000, 1.0, 86_400, 7).populate();
+
+        Assert.assertEquals(50, new AccountDAO().getAllAccounts().size());
+        Assert.assertNotNull(new AccountDAO().getAccountByLogin("user50", DatasetGenerator.PASSWORD));
+        List<Message> messages = new MessageDAO().getAllMessages();
+        Assert.assertEquals(5000, messages.size());
+
+        Map<Integer, Integer> postsByAccount = new HashMap<>();
+        long lastTime = Long.MIN_VALUE;
+        for (Message message : messages) {
+            postsByAccount.merge(message.getPosted_by(), 1, Integer::sum);
+            Assert.assertTrue(message.getTime_posted_epoch() >= lastTime);
+            lastTime = message.getTime_posted_epoch();
+            int length = message.getMessage_text().length();
+            Assert.assertTrue(length >= 1 && length < 255);
+        }
+        //with 50 accounts, account 1 should post about 22% of the messages and account 50 well under 1%
+        int busiest = postsByAccount.get(1);
+        Assert.assertTrue(String.valueOf(busiest), busiest > 900 && busiest < 1300);
+        Assert.assertTrue(postsByAccount.getOrDefault(50, 0) < postsByAccount.get(2));
+        Assert.assertTrue(lastTime - messages.get(0).getTime_posted_epoch() <= 86_400);
+    }
+
+    /**
+     * The same arguments produce the same rows.
+     */
+    @Test
+    public void sameSeedSameData() throws SQLException {
+        DatasetGenerator generator = new DatasetGenerator(20, 500, 1.2, 3600, 99);
+        generator.populate();
+        List<Message> first = new MessageDAO().getAllMessages();
+        generator.populate();
+        List<Message> second = new MessageDAO().getAllMessages();
+        Assert.assertEquals(first, second);
+
+        new DatasetGenerator(20, 500, 1.2, 3600, 100).populate();
+        Assert.assertNotEquals(first, new MessageDAO().getAllMessages());
+    }
+}
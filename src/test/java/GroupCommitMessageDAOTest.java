@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.GroupCommitMessageDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+
+public class GroupCommitMessageDAOTest {
+    MessageDAO messageDAO;
+    GroupCommitMessageDAO groupCommitDAO;
+
+    /**
+     * Before every test, reset the database and group up to 8 inserts, waiting up to 5 seconds to fill a group.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO();
+        groupCommitDAO = new GroupCommitMessageDAO(messageDAO, 8, 5_000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        groupCommitDAO.close();
+    }
+
+    /**
+     * Eight concurrent inserts are committed in one transaction, and each caller gets its own message back with its
+     * new message ID, already readable from the database.
+     */
+    @Test
+    public void concurrentInsertsShareOneCommit() {
+        List<CompletableFuture<Message>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(groupCommitDAO.submit(new Message(1, "message " + i, 1669947792L + i)));
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < 8; i++) {
+            Message inserted = results.get(i).join();
+            Assert.assertEquals("message " + i, inserted.getMessage_text());
+            Assert.assertEquals(inserted, messageDAO.getMessageByID(inserted.getMessage_id()));
+            ids.add(inserted.getMessage_id());
+        }
+        Assert.assertEquals(8, ids.size());
+        Assert.assertEquals(1, groupCommitDAO.getStats().getBatches());
+        Assert.assertEquals(8, groupCommitDAO.getStats().getRows());
+    }
+
+    /**
+     * A message that cannot be added does not take the rest of its group with it: the group is retried a message at
+     * a time and only that message is refused.
+     */
+    @Test
+    public void refusedMessageOnlyFailsItself() {
+        List<CompletableFuture<Message>> results = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            results.add(groupCommitDAO.submit(new Message(1, "message " + i, 1669947792L + i)));
+        }
+        results.add(groupCommitDAO.submit(new Message(9999, "no such account", 1669947792L)));
+
+        for (int i = 0; i < 7; i++) {
+            Assert.assertNotNull(results.get(i).join());
+        }
+        Assert.assertNull(results.get(7).join());
+        Assert.assertEquals(1, groupCommitDAO.getStats().getRetries());
+        Assert.assertEquals(7, groupCommitDAO.getStats().getRows());
+        Assert.assertEquals(8, messageDAO.getAllMessages().size());
+    }
+
+    /**
+     * Closing commits the inserts still waiting for their group to fill, and inserts after closing are refused.
+     */
+    @Test
+    public void closeCommitsWhatIsQueued() throws IOException {
+        CompletableFuture<Message> queued = groupCommitDAO.submit(new Message(1, "queued", 1669947792L));
+        groupCommitDAO.close();
+        Assert.assertEquals("queued", queued.join().getMessage_text());
+        Assert.assertNull(groupCommitDAO.insertMessage(new Message(1, "too late", 1669947792L)));
+    }
+
+    /**
+     * An Error while committing fails only the messages being committed; the committer keeps going and later inserts
+     * are still added.
+     */
+    @Test
+    public void errorDoesNotStopTheCommitter() throws IOException {
+        groupCommitDAO.close();
+        AtomicBoolean fail = new AtomicBoolean(true);
+        groupCommitDAO = new GroupCommitMessageDAO(new MessageDAO() {
+            @Override
+            public Message insertMessage(Message message) {
+                if (fail.getAndSet(false)) {
+                    throw new OutOfMemoryError("no room for this one");
+                }
+                return super.insertMessage(message);
+            }
+        }, 8, 0);
+        CompletableFuture<Message> failed = groupCommitDAO.submit(new Message(1, "first", 1669947792L));
+        try {
+            failed.join();
+            Assert.fail();
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof OutOfMemoryError);
+        }
+        Assert.assertEquals("second", groupCommitDAO.insertMessage(new Message(1, "second", 1669947792L))
+                .getMessage_text());
+    }
+}
@@ -0,0 +1,371 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import Controller.SocialMediaController;
+import Util.DatasetGenerator;
+import Util.Histogram;
+import io.javalin.Javalin;
+
+/**
+ * Drives a mix of the app's eight endpoints at a fixed arrival rate and writes latency percentiles and throughput per
+ * endpoint to a report file, so that builds can be compared on the same machine.
+ *
+ * The load is open-loop: request i is due at start + i / rate whether or not earlier requests have been answered, as
+ * requests from independent users would be. Latency is measured from the time a request was due, not from when it
+ * was sent, so a stall in the app (or in this generator) is charged to every request that should have been sent
+ * during it instead of being hidden by the generator slowing down with the app ("coordinated omission"). The time
+ * from sending to the response is reported as well, as service time.
+ *
+ * It is not a test, so the build does not run it. Run it through the jmh profile, which puts the test classes on the
+ * classpath, with options as key=value arguments:
+ *
+ *     mvn -Pjmh test -Djmh.main=LoadGenerator -Djmh.args="rate=1000 seconds=60 report=target/before.txt"
+ *
+ * Options, with their defaults:
+ *  rate=200          requests per second, over all endpoints
+ *  seconds=30        how long to measure for
+ *  warmup=10         seconds of load sent first and left out of the report
+ *  mix=...           relative weights by endpoint, e.g. "getMessage=50,postMessage=50"; endpoints left out of a given
+ *                    mix are not sent (see MIX for the names and default weights)
+ *  accounts=100      accounts to seed the database with
+ *  messages=10000    messages to seed the database with
+ *  zipf=1.0          skew of the seeded messages over the accounts, see DatasetGenerator
+ *  seed=42           random seed of the seeded data set
+ *  url=              an app already running elsewhere to send the load to, instead of starting one in this JVM on
+ *                    port 8080 and seeding its database
+ *  report=target/load-report.txt
+ */
+public class LoadGenerator {
+    /**
+     * Default weights of the endpoints, roughly a read-mostly social feed.
+     */
+    static final Map<String, Integer> MIX = new LinkedHashMap<>();
+    static {
+        MIX.put("getMessage", 35);
+        MIX.put("getAccountMessages", 20);
+        MIX.put("login", 10);
+        MIX.put("postMessage", 15);
+        MIX.put("patchMessage", 8);
+        MIX.put("register", 5);
+        MIX.put("deleteMessage", 5);
+        MIX.put("getMessages", 2);
+    }
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999, 1.0 };
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final URI base;
+    private final double rate;
+    private final long seconds;
+    private final long warmupSeconds;
+    private final int accounts;
+    private final int messages;
+    private final Map<String, Supplier<HttpRequest>> endpoints = new LinkedHashMap<>();
+    private final Map<String, Integer> mix;
+    private final AtomicLong registrations = new AtomicLong();
+
+    /**
+     * @param base address of the app, e.g. http://localhost:8080
+     * @param rate requests per second
+     * @param seconds how long to measure for
+     * @param warmupSeconds how long to send load for before measuring
+     * @param mix relative weights by endpoint name
+     * @param accounts accounts the database holds, numbered from 1
+     * @param messages messages the database holds, numbered from 1
+     */
+    public LoadGenerator(URI base, double rate, long seconds, long warmupSeconds, Map<String, Integer> mix,
+            int accounts, int messages) {
+        if (rate <= 0 || seconds <= 0 || warmupSeconds < 0 || accounts < 1 || messages < 1) {
+            throw new IllegalArgumentException("invalid load: rate=" + rate + "/s, seconds=" + seconds
+                    + ", warmup=" + warmupSeconds + ", accounts=" + accounts + ", messages=" + messages);
+        }
+        this.base = base;
+        this.rate = rate;
+        this.seconds = seconds;
+        this.warmupSeconds = warmupSeconds;
+        this.accounts = accounts;
+        this.messages = messages;
+        String registrationPrefix = "load" + Long.toString(System.currentTimeMillis(), 36) + "_";
+
+        endpoints.put("getMessage", () -> get("/messages/" + randomMessageId()));
+        endpoints.put("getAccountMessages", () -> get("/accounts/" + randomAccountId() + "/messages"));
+        endpoints.put("getMessages", () -> get("/messages"));
+        endpoints.put("login", () -> send("POST", "/login", "{\"username\":\""
+                + DatasetGenerator.username(randomAccountId()) + "\",\"password\":\"" + DatasetGenerator.PASSWORD
+                + "\"}"));
+        endpoints.put("register", () -> send("POST", "/register", "{\"username\":\"" + registrationPrefix
+                + registrations.incrementAndGet() + "\",\"password\":\"password\"}"));
+        endpoints.put("postMessage", () -> send("POST", "/messages", "{\"posted_by\":" + randomAccountId()
+                + ",\"message_text\":\"load test message\",\"time_posted_epoch\":1669947792}"));
+        endpoints.put("patchMessage", () -> send("PATCH", "/messages/" + randomMessageId(),
+                "{\"message_text\":\"load test update\"}"));
+        endpoints.put("deleteMessage", () -> HttpRequest.newBuilder(base.resolve("/messages/" + randomMessageId()))
+                .timeout(REQUEST_TIMEOUT).DELETE().build());
+
+        this.mix = new LinkedHashMap<>();
+        mix.forEach((name, weight) -> {
+            if (!endpoints.containsKey(name)) {
+                throw new IllegalArgumentException("unknown endpoint " + name + ", expected one of "
+                        + endpoints.keySet());
+            }
+            if (weight > 0) {
+                this.mix.put(name, weight);
+            }
+        });
+        if (this.mix.isEmpty()) {
+            throw new IllegalArgumentException("the mix sends no requests");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 1) {
+                throw new IllegalArgumentException("expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        long seconds = Long.parseLong(options.getOrDefault("seconds", "30"));
+        long warmup = Long.parseLong(options.getOrDefault("warmup", "10"));
+        int accounts = Integer.parseInt(options.getOrDefault("accounts", "100"));
+        int messages = Integer.parseInt(options.getOrDefault("messages", "10000"));
+        Path reportFile = Paths.get(options.getOrDefault("report", "target/load-report.txt"));
+        Map<String, Integer> mix = options.containsKey("mix") ? parseMix(options.get("mix")) : MIX;
+        String url = options.get("url");
+
+        Javalin app = null;
+        if (url == null) {
+            new DatasetGenerator(accounts, messages, Double.parseDouble(options.getOrDefault("zipf", "1.0")),
+                    365L * 24 * 60 * 60, Long.parseLong(options.getOrDefault("seed", "42"))).populate();
+            app = new SocialMediaController().startAPI().start(8080);
+            url = "http://localhost:8080";
+        }
+        try {
+            Report report = new LoadGenerator(URI.create(url), rate, seconds, warmup, mix, accounts, messages).run();
+            report.write(reportFile);
+            System.out.print(report);
+            System.out.println("Report written to " + reportFile.toAbsolutePath());
+        } finally {
+            if (app != null) {
+                app.stop();
+            }
+        }
+    }
+
+    static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] nameAndWeight = entry.trim().split("=");
+            if (nameAndWeight.length != 2) {
+                throw new IllegalArgumentException("expected endpoint=weight, got " + entry);
+            }
+            weights.put(nameAndWeight[0].trim(), Integer.parseInt(nameAndWeight[1].trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * Send the warmup load and then the measured load, wait for the responses, and report on the measured part.
+     */
+    public Report run() throws InterruptedException {
+        String[] names = mix.keySet().toArray(new String[0]);
+        int[] cumulativeWeights = new int[names.length];
+        int totalWeight = 0;
+        for (int i = 0; i < names.length; i++) {
+            totalWeight += mix.get(names[i]);
+            cumulativeWeights[i] = totalWeight;
+        }
+        Map<String, EndpointStats> stats = new LinkedHashMap<>();
+        for (String name : names) {
+            stats.put(name, new EndpointStats(name));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(executor)
+                .build();
+        AtomicLong inFlight = new AtomicLong();
+        double intervalNanos = 1e9 / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + warmupSeconds * 1_000_000_000L;
+        long end = measureFrom + seconds * 1_000_000_000L;
+        long sendLag = 0;
+        try {
+            for (long i = 0; ; i++) {
+                long due = start + (long) (i * intervalNanos);
+                if (due >= end) {
+                    break;
+                }
+                long now = System.nanoTime();
+                if (due > now) {
+                    LockSupport.parkNanos(due - now);
+                } else {
+                    sendLag = Math.max(sendLag, now - due);
+                }
+                int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+                int endpoint = 0;
+                while (cumulativeWeights[endpoint] <= pick) {
+                    endpoint++;
+                }
+                EndpointStats endpointStats = due >= measureFrom ? stats.get(names[endpoint]) : null;
+                HttpRequest request = endpoints.get(names[endpoint]).get();
+                long sent = System.nanoTime();
+                inFlight.incrementAndGet();
+                client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                        .whenComplete((response, failure) -> {
+                            long done = System.nanoTime();
+                            inFlight.decrementAndGet();
+                            if (endpointStats != null) {
+                                endpointStats.record(response != null ? response.statusCode() : 0,
+                                        done - due, done - sent);
+                            }
+                        });
+            }
+            long waitUntil = System.nanoTime() + REQUEST_TIMEOUT.toNanos();
+            while (inFlight.get() > 0 && System.nanoTime() < waitUntil) {
+                Thread.sleep(10);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Report(rate, seconds, warmupSeconds, mix, new ArrayList<>(stats.values()), inFlight.get(),
+                sendLag);
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(base.resolve(path)).timeout(REQUEST_TIMEOUT).GET().build();
+    }
+
+    private HttpRequest send(String method, String path, String body) {
+        return HttpRequest.newBuilder(base.resolve(path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private int randomMessageId() {
+        return 1 + ThreadLocalRandom.current().nextInt(messages);
+    }
+
+    private int randomAccountId() {
+        return 1 + ThreadLocalRandom.current().nextInt(accounts);
+    }
+
+    /**
+     * Responses and latencies of one endpoint. Requests that failed without a response are counted under status 0.
+     */
+    static final class EndpointStats {
+        final String name;
+        final Histogram latency = new Histogram();
+        final Histogram serviceTime = new Histogram();
+        final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        EndpointStats(String name) {
+            this.name = name;
+        }
+
+        void record(int status, long latencyNanos, long serviceNanos) {
+            latency.recordNanos(latencyNanos);
+            serviceTime.recordNanos(serviceNanos);
+            statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+        }
+
+        long getErrors() {
+            long errors = 0;
+            for (Map.Entry<Integer, LongAdder> status : statuses.entrySet()) {
+                if (status.getKey() < 200 || status.getKey() >= 400) {
+                    errors += status.getValue().sum();
+                }
+            }
+            return errors;
+        }
+    }
+
+    /**
+     * The outcome of a run, one line per endpoint.
+     */
+    static final class Report {
+        final double rate;
+        final long seconds;
+        final long warmupSeconds;
+        final Map<String, Integer> mix;
+        final List<EndpointStats> endpoints;
+        final long unanswered;
+        final long maxSendLagNanos;
+
+        Report(double rate, long seconds, long warmupSeconds, Map<String, Integer> mix, List<EndpointStats> endpoints,
+                long unanswered, long maxSendLagNanos) {
+            this.rate = rate;
+            this.seconds = seconds;
+            this.warmupSeconds = warmupSeconds;
+            this.mix = mix;
+            this.endpoints = endpoints;
+            this.unanswered = unanswered;
+            this.maxSendLagNanos = maxSendLagNanos;
+        }
+
+        void write(Path file) throws IOException {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.write(file, toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("# %s rate=%.0f/s seconds=%d warmup=%d java=%s cpus=%d%n", Instant.now(), rate,
+                    seconds, warmupSeconds, System.getProperty("java.version"),
+                    Runtime.getRuntime().availableProcessors()));
+            out.append("# mix=").append(mix).append(String.format(
+                    " unanswered=%d max send lag=%.2fms%n", unanswered, maxSendLagNanos / 1e6));
+            out.append("# latency is from when each request was due; service time is from when it was sent (ms)\n");
+            out.append(String.format("%-20s %9s %8s %9s %9s %9s %9s %9s %9s %11s %11s  %s%n", "endpoint",
+                    "requests", "errors", "req/s", "p50", "p90", "p99", "p99.9", "max", "service p50",
+                    "service p99", "statuses"));
+            long totalRequests = 0;
+            long totalErrors = 0;
+            for (EndpointStats endpoint : endpoints) {
+                long requests = endpoint.latency.getCount();
+                totalRequests += requests;
+                totalErrors += endpoint.getErrors();
+                out.append(String.format("%-20s %9d %8d %9.1f", endpoint.name, requests, endpoint.getErrors(),
+                        requests / (double) seconds));
+                for (double quantile : QUANTILES) {
+                    out.append(String.format(" %9.2f", endpoint.latency.getValueAtQuantileNanos(quantile) / 1e6));
+                }
+                out.append(String.format(" %11.2f %11.2f  %s%n",
+                        endpoint.serviceTime.getValueAtQuantileNanos(0.5) / 1e6,
+                        endpoint.serviceTime.getValueAtQuantileNanos(0.99) / 1e6, new TreeMap<>(endpoint.statuses)));
+            }
+            out.append(String.format("%-20s %9d %8d %9.1f%n", "total", totalRequests, totalErrors,
+                    totalRequests / (double) seconds));
+            return out.toString();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class LoadGeneratorTest {
+    SocialMediaController socialMediaController;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and restart the Javalin app.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending 100 requests a second for 2 seconds to GET localhost:8080/messages/{message_id},
+     * GET localhost:8080/accounts/{account_id}/messages, POST localhost:8080/login and POST localhost:8080/register
+     *
+     * Expected Response:
+     *  Status Code: 200 for every request, and a report with a line per endpoint
+     */
+    @Test
+    public void sendsRequestsAtTheGivenRate() throws InterruptedException, IOException {
+        LoadGenerator generator = new LoadGenerator(URI.create("http://localhost:8080"), 100, 2, 0,
+                LoadGenerator.parseMix("getMessage=4,getAccountMessages=3,login=2,register=1"), 1, 1);
+        LoadGenerator.Report report = generator.run();
+
+        Assert.assertEquals(0, report.unanswered);
+        long requests = 0;
+        for (LoadGenerator.EndpointStats endpoint : report.endpoints) {
+            Assert.assertEquals(endpoint.name, 0, endpoint.getErrors());
+            Assert.assertTrue(endpoint.name, endpoint.latency.getCount() > 0);
+            requests += endpoint.latency.getCount();
+        }
+        Assert.assertEquals(200, requests);
+
+        Path file = Files.createTempFile("load-report", ".txt");
+        try {
+            report.write(file);
+            String written = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            for (String endpoint : new String[] { "getMessage", "getAccountMessages", "login", "register", "total" }) {
+                Assert.assertTrue(written, written.contains("\n" + endpoint + " "));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A mix naming an endpoint the generator does not know is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownEndpointIsRefused() {
+        new LoadGenerator(URI.create("http://localhost:8080"), 100, 2, 0, LoadGenerator.parseMix("getEverything=1"),
+                1, 1);
+    }
+}
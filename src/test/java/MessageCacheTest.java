@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.MessageService;
+import Util.Cache;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageCacheTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 twice should read the message from the database once.
+     */
+    @Test
+    public void repeatedGetIsServedFromCache() throws IOException, InterruptedException {
+        Message expectedResult = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(expectedResult, objectMapper.readValue(get("/messages/1").body(), Message.class));
+        Assert.assertEquals(expectedResult, objectMapper.readValue(get("/messages/1").body(), Message.class));
+
+        Cache.Stats stats = MessageService.getMessageCacheStats();
+        Assert.assertEquals(1, stats.getMisses());
+        Assert.assertEquals(1, stats.getHits());
+    }
+
+    /**
+     * After PATCH localhost:8080/messages/1, GET localhost:8080/messages/1 should return the updated message, not the
+     * one cached before the update.
+     */
+    @Test
+    public void updateReplacesCachedMessage() throws IOException, InterruptedException {
+        get("/messages/1");
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Message expectedResult = new Message(1, 1, "updated message", 1669947792);
+        Assert.assertEquals(expectedResult, objectMapper.readValue(get("/messages/1").body(), Message.class));
+    }
+
+    /**
+     * After DELETE localhost:8080/messages/1, GET localhost:8080/messages/1 should be empty, and asking again should
+     * be answered by the cached "missing" without reading the database.
+     */
+    @Test
+    public void deletedMessageIsCachedAsMissing() throws IOException, InterruptedException {
+        get("/messages/1");
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals("", get("/messages/1").body());
+        Assert.assertEquals("", get("/messages/1").body());
+        Cache.Stats stats = MessageService.getMessageCacheStats();
+        Assert.assertEquals(1, stats.getMisses());
+        Assert.assertEquals(2, stats.getHits());
+    }
+
+    /**
+     * A message posted after its id was looked up and found missing should be found straight away.
+     */
+    @Test
+    public void postedMessageReplacesCachedMissing() throws IOException, InterruptedException {
+        Assert.assertEquals("", get("/messages/2").body());
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Message expectedResult = new Message(2, 1, "hello message", 1669947792);
+        Assert.assertEquals(expectedResult, objectMapper.readValue(get("/messages/2").body(), Message.class));
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
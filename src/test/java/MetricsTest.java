@@ -0,0 +1,101 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.Histogram;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/metrics after a few requests to other endpoints
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text counting those requests by route and status, with their latency percentiles,
+     *  and gauges of the connection pool and caches
+     */
+    @Test
+    public void metricsCountRequestsByRouteAndStatus() throws IOException, InterruptedException {
+        Assert.assertEquals(200, get("/messages/1").statusCode());
+        Assert.assertEquals(200, get("/messages/1").statusCode());
+        Assert.assertEquals(200, get("/messages/100").statusCode());
+        Assert.assertEquals(404, get("/nowhere").statusCode());
+
+        HttpResponse<String> response = get("/metrics");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+        String body = response.body();
+        Assert.assertTrue(body, body.contains(
+                "http_requests_total{method=\"GET\",route=\"/messages/{message_id}\",status=\"200\"} 3\n"));
+        Assert.assertTrue(body, body.contains(
+                "http_requests_total{method=\"*\",route=\"unmatched\",status=\"404\"} 1\n"));
+        Assert.assertTrue(body, body.contains(
+                "http_request_duration_seconds_count{method=\"GET\",route=\"/messages/{message_id}\"} 3\n"));
+        Assert.assertTrue(body, body.contains(
+                "http_request_duration_seconds{method=\"GET\",route=\"/messages/{message_id}\",quantile=\"0.99\"}"));
+        Assert.assertTrue(body, body.contains("# TYPE db_pool_connections gauge\n"));
+        Assert.assertTrue(body, body.contains("cache_misses_total{cache=\"message\"} 2\n"));
+        Assert.assertTrue(body, body.contains("cache_hits_total{cache=\"message\"} 1\n"));
+    }
+
+    /**
+     * Percentiles read back from a Histogram should be within a few percent of the recorded durations.
+     */
+    @Test
+    public void histogramPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int millis = 1; millis <= 1000; millis++) {
+            histogram.recordNanos(millis * 1_000_000L);
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        assertNear(500_000_000L, histogram.getValueAtQuantileNanos(0.5));
+        assertNear(990_000_000L, histogram.getValueAtQuantileNanos(0.99));
+        assertNear(1_000_000_000L, histogram.getValueAtQuantileNanos(1.0));
+        Assert.assertEquals(0, new Histogram().getValueAtQuantileNanos(0.5));
+    }
+
+    private static void assertNear(long expected, long actual) {
+        Assert.assertTrue("expected about " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected * 0.035);
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import Util.ConnectionUtil;
+import Util.QueryMetrics;
+import io.javalin.Javalin;
+
+public class QueryMetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        QueryMetrics.setSlowQueryMillis(Long.getLong("db.slowQueryMillis", 100));
+        app.stop();
+    }
+
+    /**
+     * Every execution of a DAO statement is counted against the name of its constant, with the rows it returned.
+     */
+    @Test
+    public void queriesAreCountedByName() {
+        QueryMetrics before = find("AccountDAO.SELECT_ACCOUNT_BY_ID");
+        long count = before == null ? 0 : before.getLatency().getCount();
+        long rows = before == null ? 0 : before.getRows();
+
+        AccountDAO accountDAO = new AccountDAO();
+        Assert.assertNotNull(accountDAO.getAccountByID(1));
+        Assert.assertNull(accountDAO.getAccountByID(9999));
+
+        QueryMetrics after = find("AccountDAO.SELECT_ACCOUNT_BY_ID");
+        Assert.assertNotNull(after);
+        Assert.assertEquals(AccountDAO.SELECT_ACCOUNT_BY_ID, after.getSql());
+        Assert.assertEquals(count + 2, after.getLatency().getCount());
+        Assert.assertEquals(rows + 1, after.getRows());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/register with every query logged as slow
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  and the insert is logged with its username but not its password
+     */
+    @Test
+    public void slowQueriesAreLoggedWithoutPasswords() throws IOException, InterruptedException {
+        QueryMetrics.setSlowQueryMillis(0);
+        long slowQueries = QueryMetrics.getSlowQueryCount();
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"slowuser\", " +
+                        "\"password\": \"hunter2secret\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        Assert.assertTrue(QueryMetrics.getSlowQueryCount() > slowQueries);
+        QueryMetrics.SlowQuery insert = QueryMetrics.getSlowQueries().stream()
+                .filter(query -> query.getName().equals("AccountDAO.INSERT_ACCOUNT"))
+                .reduce((first, second) -> second).orElseThrow();
+        Assert.assertTrue(insert.getBinds(), insert.getBinds().contains("username='slowuser'"));
+        Assert.assertFalse(insert.getBinds(), insert.getBinds().contains("hunter2secret"));
+        Assert.assertTrue(insert.getBinds(), insert.getBinds().contains("password=<redacted>"));
+        for (QueryMetrics.SlowQuery query : QueryMetrics.getSlowQueries()) {
+            Assert.assertFalse(query.toString(), query.toString().contains("hunter2secret"));
+        }
+    }
+
+    private QueryMetrics find(String name) {
+        return QueryMetrics.getAll().stream().filter(query -> query.getName().equals(name)).findFirst().orElse(null);
+    }
+}
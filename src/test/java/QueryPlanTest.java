@@ -0,0 +1,98 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Util.ConnectionUtil;
+
+public class QueryPlanTest {
+    private static final Pattern DELTA_TABLE = Pattern.compile("(?i)select \\* from (?:final|old|new) table \\((.*)\\)");
+
+    /**
+     * Before every test, reset the database so the schema (and its indexes) match src/main/resources/SocialMedia.sql.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Every DAO statement that looks rows up should be answered from an index rather than a scan of the whole table.
+     * Listing every row (select * from message / account) and inserts are left out on purpose.
+     */
+    @Test
+    public void daoQueriesUseAnIndex() throws SQLException {
+        Map<String, String> queries = new LinkedHashMap<>();
+        queries.put("AccountDAO.SELECT_ACCOUNT_BY_ID", AccountDAO.SELECT_ACCOUNT_BY_ID);
+        queries.put("AccountDAO.UPDATE_ACCOUNT", AccountDAO.UPDATE_ACCOUNT);
+        queries.put("AccountDAO.SELECT_ACCOUNT_BY_LOGIN", AccountDAO.SELECT_ACCOUNT_BY_LOGIN);
+        queries.put("AccountDAO.SELECT_ACCOUNTS_BY_IDS", AccountDAO.SELECT_ACCOUNTS_BY_IDS);
+        queries.put("MessageDAO.SELECT_MESSAGE_BY_ID", MessageDAO.SELECT_MESSAGE_BY_ID);
+        queries.put("MessageDAO.SELECT_MESSAGES_BY_ACCOUNT_ID", MessageDAO.SELECT_MESSAGES_BY_ACCOUNT_ID);
+        queries.put("MessageDAO.SELECT_MESSAGES_AFTER", MessageDAO.SELECT_MESSAGES_AFTER);
+        queries.put("MessageDAO.SELECT_MESSAGES_BY_ACCOUNT_ID_AFTER", MessageDAO.SELECT_MESSAGES_BY_ACCOUNT_ID_AFTER);
+        queries.put("MessageDAO.SELECT_RECENT_MESSAGES_BY_ACCOUNT_ID", MessageDAO.SELECT_RECENT_MESSAGES_BY_ACCOUNT_ID);
+        queries.put("MessageDAO.UPDATE_MESSAGE", MessageDAO.UPDATE_MESSAGE);
+        queries.put("MessageDAO.UPDATE_MESSAGE_TEXT", MessageDAO.UPDATE_MESSAGE_TEXT);
+        queries.put("MessageDAO.DELETE_MESSAGE_BY_ID", MessageDAO.DELETE_MESSAGE_BY_ID);
+
+        for (Map.Entry<String, String> query : queries.entrySet()) {
+            String plan = explain(query.getValue());
+            Assert.assertFalse(query.getKey() + " scans the whole table:\n" + plan, plan.contains("tableScan"));
+        }
+    }
+
+    /**
+     * Per-account timelines should come out of the (posted_by, time_posted_epoch) index, not the foreign key index,
+     * so they can be read in time order without a sort.
+     */
+    @Test
+    public void accountTimelineUsesCompositeIndex() throws SQLException {
+        String plan = explain(MessageDAO.SELECT_MESSAGES_BY_ACCOUNT_ID_AFTER);
+        Assert.assertTrue(plan, plan.contains("MESSAGE_POSTED_BY_TIME_IDX"));
+    }
+
+    /**
+     * Run EXPLAIN on a DAO statement with every parameter bound to 1 (or an array holding 1, for = any(?)).
+     * EXPLAIN on a "select * from final/old table (...)" only describes the delta table, so the update or delete
+     * inside it is explained instead.
+     */
+    private String explain(String sql) throws SQLException {
+        Matcher deltaTable = DELTA_TABLE.matcher(sql);
+        if (deltaTable.matches()) {
+            sql = deltaTable.group(1);
+        }
+        Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = connection.prepareStatement("explain " + sql.replaceAll(";\\s*$", ""));
+            int parameters = ps.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameters; i++) {
+                if (sql.contains("any(?)")) {
+                    ps.setObject(i, new Integer[] { 1 });
+                } else {
+                    ps.setInt(i, 1);
+                }
+            }
+            rs = ps.executeQuery();
+            StringBuilder plan = new StringBuilder();
+            while (rs.next()) {
+                plan.append(rs.getString(1)).append('\n');
+            }
+            return plan.toString();
+        } finally {
+            ConnectionUtil.close(rs, ps, connection);
+        }
+    }
+}
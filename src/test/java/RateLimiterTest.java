@@ -0,0 +1,170 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.RateLimiter;
+import io.javalin.Javalin;
+
+public class RateLimiterTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with a write rate limit of 5 per second, and
+     * create a new webClient for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController(5);
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to POST localhost:8080/messages for account 1 faster than its rate limit allows
+     *
+     * Expected Response:
+     *  Status Code: 200 for at least the first 20 requests (the burst), then 429 with a Retry-After header
+     */
+    @Test
+    public void postsPastBurstAreRejected() throws IOException, InterruptedException {
+        int allowed = sendUntilRefused(this::post);
+        RateLimiter.Stats stats = socialMediaController.getWriteRateLimiterStats();
+        Assert.assertEquals(allowed, stats.getAllowed());
+        Assert.assertEquals(1, stats.getRejected());
+    }
+
+    /**
+     * Sending http requests to POST localhost:8080/messages and PATCH localhost:8080/messages/1, whose author is
+     * account 1, faster than account 1's rate limit allows
+     *
+     * Expected Response:
+     *  Status Code: 200 for at least the first 20 requests (the burst, shared by posts and updates), then 429 with a
+     *  Retry-After header
+     */
+    @Test
+    public void updatesShareTheAuthorsLimit() throws IOException, InterruptedException {
+        int[] sent = new int[1];
+        int allowed = sendUntilRefused(() -> sent[0]++ % 2 == 0 ? post() : patch());
+        RateLimiter.Stats stats = socialMediaController.getWriteRateLimiterStats();
+        Assert.assertEquals(allowed, stats.getAllowed());
+        Assert.assertEquals(1, stats.getRejected());
+    }
+
+    /**
+     * Requests that fail validation are refused with a 400 without taking a token.
+     */
+    @Test
+    public void invalidWritesDoNotCount() throws IOException, InterruptedException {
+        for (int i = 0; i < 30; i++) {
+            Assert.assertEquals(400, send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, \"message_text\": \"\" }")))
+                    .statusCode());
+            Assert.assertEquals(400, send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/1"))
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"\" }")))
+                    .statusCode());
+        }
+        Assert.assertEquals(0, socialMediaController.getWriteRateLimiterStats().getAllowed());
+    }
+
+    /**
+     * A bucket allows burst requests at once, then one more per interval as tokens come back.
+     */
+    @Test
+    public void bucketRefills() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(20, 3, 60_000);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(0, limiter.tryAcquire(1));
+        }
+        long waitMillis = limiter.tryAcquire(1);
+        Assert.assertTrue(waitMillis > 0 && waitMillis <= 50);
+        Assert.assertEquals(0, limiter.tryAcquire(2));
+
+        Thread.sleep(waitMillis + 5);
+        Assert.assertEquals(0, limiter.tryAcquire(1));
+        Assert.assertTrue(limiter.tryAcquire(1) > 0);
+    }
+
+    /**
+     * Buckets left full for longer than the idle period are dropped.
+     */
+    @Test
+    public void idleBucketsAreEvicted() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(1000, 1, 20);
+        for (int key = 0; key < 100; key++) {
+            limiter.tryAcquire(key);
+        }
+        Assert.assertEquals(100, limiter.getStats().getBuckets());
+
+        Thread.sleep(50);
+        limiter.tryAcquire(1000);
+        Assert.assertEquals(1, limiter.getStats().getBuckets());
+        Assert.assertEquals(100, limiter.getStats().getEvicted());
+    }
+
+    private interface Request {
+        HttpResponse<String> send() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Send request until it is refused, and check it was refused with a 429 and a Retry-After header.
+     * @return how many were allowed first
+     */
+    private int sendUntilRefused(Request request) throws IOException, InterruptedException {
+        int allowed = 0;
+        HttpResponse<String> response = null;
+        while (allowed < 100) {
+            response = request.send();
+            if (response.statusCode() != 200) {
+                break;
+            }
+            allowed++;
+        }
+        //tokens come back while the requests are sent, so a few more than the burst may get through
+        Assert.assertTrue(allowed >= 20 && allowed < 100);
+        Assert.assertEquals(429, response.statusCode());
+        Assert.assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+        return allowed;
+    }
+
+    private HttpResponse<String> post() throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}")));
+    }
+
+    private HttpResponse<String> patch() throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\" }")));
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return webClient.send(request.header("Content-Type", "application/json").build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
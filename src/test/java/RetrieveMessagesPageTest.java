@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesPageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add four more messages for testuser1 (five in total), restart the
+     * Javalin app, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        addMessages();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Walking GET localhost:8080/messages?limit=2 with the X-Next-Cursor header should visit every message exactly
+     * once, in message_id order, and the last page should have no cursor.
+     */
+    @Test
+    public void getAllMessagesPaged() throws IOException, InterruptedException {
+        List<Integer> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            HttpResponse<String> response = get("/messages?limit=2" + (cursor == null ? "" : "&after=" + cursor));
+            Assert.assertEquals(200, response.statusCode());
+            List<Message> page = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+            Assert.assertTrue(page.size() <= 2);
+            for (Message message : page) {
+                seen.add(message.getMessage_id());
+            }
+            cursor = response.headers().firstValue("X-Next-Cursor").orElse(null);
+            pages++;
+        } while (cursor != null);
+
+        Assert.assertEquals(3, pages);
+        Assert.assertEquals(List.of(1, 2, 3, 4, 5), seen);
+    }
+
+    /**
+     * Paging GET localhost:8080/accounts/1/messages should return the account's messages ordered by
+     * time_posted_epoch, with ties broken by message_id.
+     */
+    @Test
+    public void getAllMessagesForUserPagedInTimeOrder() throws IOException, InterruptedException {
+        List<Integer> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            HttpResponse<String> response = get("/accounts/1/messages?limit=3"
+                    + (cursor == null ? "" : "&after=" + cursor));
+            Assert.assertEquals(200, response.statusCode());
+            List<Message> page = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+            for (Message message : page) {
+                seen.add(message.getMessage_id());
+            }
+            cursor = response.headers().firstValue("X-Next-Cursor").orElse(null);
+        } while (cursor != null);
+
+        Assert.assertEquals(List.of(4, 5, 1, 2, 3), seen);
+    }
+
+    /**
+     * A limit that is not a positive number, or a cursor that was not produced by the server, is a client error.
+     */
+    @Test
+    public void getAllMessagesPagedBadParameters() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?limit=0").statusCode());
+        Assert.assertEquals(400, get("/messages?limit=abc").statusCode());
+        Assert.assertEquals(400, get("/messages?after=not-a-cursor").statusCode());
+        Assert.assertEquals(400, get("/accounts/1/messages?after=not-a-cursor").statusCode());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void addMessages(){
+        Connection conn = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement ps = conn.prepareStatement(
+                    "insert into message (posted_by, message_text, time_posted_epoch) values (1, ?, ?)");
+            long[] times = {1669947800, 1669947800, 1669947700, 1669947700};
+            for (int i = 0; i < times.length; i++) {
+                ps.setString(1, "test message " + (i + 2));
+                ps.setLong(2, times[i]);
+                ps.executeUpdate();
+            }
+            ps.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            ConnectionUtil.close(conn);
+        }
+    }
+}
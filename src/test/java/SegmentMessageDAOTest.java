@@ -0,0 +1,241 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.SegmentMessageDAO;
+import Model.Message;
+
+public class SegmentMessageDAOTest {
+    static final int ACCOUNTS = 10;
+    static final int SEGMENT_BYTES = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Path directory;
+    SegmentMessageDAO segmentDAO;
+
+    /**
+     * Before every test, open an empty store with small segments, no background thread and accounts 1 to ACCOUNTS.
+     */
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.getRoot().toPath();
+        segmentDAO = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        segmentDAO.close();
+    }
+
+    /**
+     * Inserts, updates and deletes are read back, and read back the same after the store is reopened.
+     */
+    @Test
+    public void writesSurviveReopening() throws IOException {
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            batch.add(new Message(1 + i % ACCOUNTS, "message " + i, 1000 - i));
+        }
+        List<Message> inserted = segmentDAO.insertMessages(batch, 500);
+        Assert.assertEquals(150, inserted.size());
+        Assert.assertEquals(1, inserted.get(0).getMessage_id());
+        Assert.assertTrue(segmentDAO.segmentCount() > 1);
+        Assert.assertNull(segmentDAO.insertMessage(new Message(ACCOUNTS + 1, "no such account", 0)));
+        Assert.assertNull(segmentDAO.insertMessages(List.of(new Message(1, "fine", 0),
+                new Message(ACCOUNTS + 1, "no such account", 0)), 500));
+
+        String text = "updated \u00fcn\u00efc\u00f6de";
+        Assert.assertEquals(text, segmentDAO.updateMessageText(5, text).getMessage_text());
+        segmentDAO.updateMessage(6, new Message(2, "moved", 1));
+        segmentDAO.updateMessage(7, new Message(ACCOUNTS + 1, "refused", 1));
+        Assert.assertEquals(inserted.get(7), segmentDAO.deleteMessageByID(8));
+        Assert.assertNull(segmentDAO.deleteMessageByID(8));
+        Assert.assertNull(segmentDAO.getMessageByID(8));
+        Assert.assertEquals(new Message(6, 2, "moved", 1), segmentDAO.getMessagesByAccountID(2).get(0));
+        Assert.assertEquals(inserted.get(6), segmentDAO.getMessageByID(7));
+        Assert.assertEquals(149, segmentDAO.size());
+
+        List<Message> before = segmentDAO.getAllMessages();
+        List<Message> timeline = segmentDAO.getMessagesByAccountID(3);
+        segmentDAO.close();
+        segmentDAO = open();
+        Assert.assertEquals(before, segmentDAO.getAllMessages());
+        Assert.assertEquals(timeline, segmentDAO.getMessagesByAccountID(3));
+        Assert.assertEquals(151, segmentDAO.insertMessage(new Message(1, "after reopening", 0)).getMessage_id());
+        Assert.assertEquals(before.subList(10, 30), segmentDAO.getMessagesAfter(before.get(9).getMessage_id(), 20));
+        Assert.assertEquals(timeline.subList(2, 4), segmentDAO.getMessagesByAccountIDAfter(3,
+                timeline.get(1).getTime_posted_epoch(), timeline.get(1).getMessage_id(), 2));
+        Assert.assertEquals(timeline.get(timeline.size() - 1), segmentDAO.getRecentMessagesByAccountID(3, 1).get(0));
+    }
+
+    /**
+     * A record left half written by a crash is discarded when the store is reopened, and the records before it kept.
+     */
+    @Test
+    public void tornRecordIsDiscarded() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            segmentDAO.insertMessage(new Message(1, "message " + i, i));
+        }
+        segmentDAO.close();
+        Path last;
+        try (Stream<Path> files = Files.list(directory)) {
+            last = files.filter(file -> file.toString().endsWith(".segment")).sorted()
+                    .reduce((first, second) -> second).get();
+        }
+        int end = 3 * (SegmentMessageDAO.HEADER_BYTES + "message 0".length());
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            //a length and part of a header, but no CRC
+            ByteBuffer torn = ByteBuffer.allocate(12);
+            torn.putInt(0).putInt(40).putInt(0x01000000);
+            torn.flip();
+            channel.write(torn, end);
+        }
+
+        segmentDAO = open();
+        Assert.assertEquals(3, segmentDAO.size());
+        Assert.assertEquals(4, segmentDAO.insertMessage(new Message(1, "after the crash", 3)).getMessage_id());
+        segmentDAO.close();
+        segmentDAO = open();
+        Assert.assertEquals(List.of("message 0", "message 1", "message 2", "after the crash"),
+                segmentDAO.getAllMessages().stream().map(Message::getMessage_text).collect(Collectors.toList()));
+    }
+
+    /**
+     * Everything after a torn record is cleared when the store is reopened, not only the torn record, so no older
+     * bytes further on can later be read back as records.
+     */
+    @Test
+    public void bytesPastTornRecordAreCleared() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            segmentDAO.insertMessage(new Message(1, "message " + i, i));
+        }
+        segmentDAO.close();
+        Path segment = directory.resolve("0000000001.segment");
+        int recordBytes = SegmentMessageDAO.HEADER_BYTES + "message 0".length();
+        int end = 3 * recordBytes;
+        int stale = SEGMENT_BYTES - recordBytes;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //a whole record left far past the end, and a torn one right at it
+            ByteBuffer record = ByteBuffer.allocate(recordBytes);
+            channel.read(record, 0);
+            record.flip();
+            channel.write(record, stale);
+            ByteBuffer torn = ByteBuffer.allocate(12);
+            torn.putInt(0).putInt(40).putInt(0x01000000);
+            torn.flip();
+            channel.write(torn, end);
+        }
+
+        segmentDAO = open();
+        Assert.assertEquals(3, segmentDAO.size());
+        segmentDAO.close();
+        byte[] bytes = Files.readAllBytes(segment);
+        for (int i = end; i < bytes.length; i++) {
+            Assert.assertEquals("byte " + i, 0, bytes[i]);
+        }
+        segmentDAO = open();
+    }
+
+    /**
+     * Once the oldest segments are mostly old versions and deleted messages, compaction moves what is left of them to
+     * the newest segment and deletes them, and reopening does not bring anything back.
+     */
+    @Test
+    public void compactionDeletesDeadSegments() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            segmentDAO.insertMessage(new Message(1 + i % ACCOUNTS, "message " + i, i));
+        }
+        for (int id = 1; id <= 200; id++) {
+            if (id % 10 == 0) {
+                segmentDAO.deleteMessageByID(id);
+            } else if (id % 10 != 1) {
+                segmentDAO.updateMessageText(id, "updated " + id);
+            }
+        }
+        int segments = segmentDAO.segmentCount();
+        List<Message> before = segmentDAO.getAllMessages();
+        List<Message> timeline = segmentDAO.getMessagesByAccountID(1);
+
+        Assert.assertTrue(segmentDAO.compact() > 0);
+        Assert.assertTrue(segmentDAO.segmentCount() < segments);
+        Assert.assertEquals(before, segmentDAO.getAllMessages());
+        Assert.assertEquals(timeline, segmentDAO.getMessagesByAccountID(1));
+
+        segmentDAO.close();
+        segmentDAO = open();
+        Assert.assertEquals(before, segmentDAO.getAllMessages());
+        Assert.assertEquals(timeline, segmentDAO.getMessagesByAccountID(1));
+        Assert.assertEquals(180, segmentDAO.size());
+    }
+
+    /**
+     * Deleting the newest message and then compacting away the segment holding both its insert and its delete does not
+     * let its message ID be handed out again after the store is reopened.
+     */
+    @Test
+    public void compactionKeepsHighestMessageID() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            segmentDAO.insertMessage(new Message(1, "message " + i, i));
+        }
+        segmentDAO.deleteMessageByID(50);
+        for (int round = 0; round < 3; round++) {
+            for (int id = 1; id < 50; id++) {
+                segmentDAO.updateMessageText(id, "update " + round + " of " + id);
+            }
+        }
+        Assert.assertTrue(segmentDAO.compact() > 0);
+        Assert.assertFalse(Files.exists(directory.resolve("0000000001.segment")));
+
+        segmentDAO.close();
+        segmentDAO = open();
+        Assert.assertEquals(49, segmentDAO.size());
+        Assert.assertNull(segmentDAO.getMessageByID(50));
+        Assert.assertEquals(51, segmentDAO.insertMessage(new Message(1, "after compaction", 50)).getMessage_id());
+    }
+
+    /**
+     * A timeline read running alongside updates of its messages' text still sees every message.
+     */
+    @Test
+    public void updatesDoNotHideMessagesFromTimelines() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            segmentDAO.insertMessage(new Message(1, "message " + i, i));
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (int round = 0; !done.get(); round++) {
+                segmentDAO.updateMessageText(1 + round % 20, "update " + round);
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 20_000; i++) {
+                Assert.assertEquals(20, segmentDAO.getMessagesByAccountID(1).size());
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+    }
+
+    private SegmentMessageDAO open() throws IOException {
+        return new SegmentMessageDAO(directory, SEGMENT_BYTES, 0, 0, id -> id >= 1 && id <= ACCOUNTS);
+    }
+}
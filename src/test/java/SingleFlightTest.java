@@ -0,0 +1,148 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.SingleFlight;
+
+public class SingleFlightTest {
+    ExecutorService threads = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        threads.shutdownNow();
+    }
+
+    /**
+     * Callers asking for a key while it is being loaded should wait for that load and share its value instead of
+     * running the loader themselves.
+     */
+    @Test
+    public void concurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<Integer, String> flight = new SingleFlight<>();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> flight.load(1, key -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return "one";
+        }), threads);
+        Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        List<CompletableFuture<String>> followers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            followers.add(CompletableFuture.supplyAsync(() -> flight.load(1, key -> {
+                loads.incrementAndGet();
+                return "another one";
+            }), threads));
+        }
+        while (flight.getStats().getCollapsed() < 4) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        Assert.assertEquals("one", first.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<String> follower : followers) {
+            Assert.assertEquals("one", follower.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1, flight.getStats().getLoads());
+        //once the load is over, the next caller loads again
+        Assert.assertEquals("two", flight.load(1, key -> "two"));
+        Assert.assertEquals(2, flight.getStats().getLoads());
+    }
+
+    /**
+     * A load that fails should fail for every caller sharing it, and not be remembered.
+     */
+    @Test
+    public void failedLoadIsNotKept() {
+        SingleFlight<Integer, String> flight = new SingleFlight<>();
+        try {
+            flight.load(1, key -> {
+                throw new IllegalStateException("database down");
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("database down", e.getMessage());
+        }
+        Assert.assertEquals("one", flight.load(1, key -> "one"));
+    }
+
+    /**
+     * After forget, callers should start a new load rather than share one that began before a write.
+     */
+    @Test
+    public void forgottenLoadIsNotShared() throws Exception {
+        SingleFlight<Integer, String> flight = new SingleFlight<>();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> stale = CompletableFuture.supplyAsync(() -> flight.load(1, key -> {
+            loading.countDown();
+            await(release);
+            return "before the write";
+        }), threads);
+        Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        flight.forget(1);
+        Assert.assertEquals("after the write", flight.load(1, key -> "after the write"));
+        release.countDown();
+        Assert.assertEquals("before the write", stale.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, flight.getStats().getCollapsed());
+    }
+
+    /**
+     * A message lookup that read the old text and is still in flight when the message is updated should neither be
+     * shared with lookups after the update nor be cached, so the next lookup returns the new text.
+     */
+    @Test
+    public void updateIsNotHiddenByLoadInFlight() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger lookups = new AtomicInteger();
+        MessageService messageService = new MessageService(new MessageDAO() {
+            @Override
+            public Message getMessageByID(int id) {
+                Message message = super.getMessageByID(id);
+                if (lookups.incrementAndGet() == 1) {
+                    loading.countDown();
+                    await(release);
+                }
+                return message;
+            }
+        });
+        CompletableFuture<Message> stale = CompletableFuture.supplyAsync(() -> MessageService.getMessageByID(1),
+                threads);
+        Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        String text = "updated while a lookup was in flight";
+        Assert.assertEquals(text, messageService.updateMessage(1, new Message(1, text, 0)).getMessage_text());
+        Assert.assertEquals(text, MessageService.getMessageByID(1).getMessage_text());
+        release.countDown();
+        Assert.assertEquals("test message 1", stale.get(5, TimeUnit.SECONDS).getMessage_text());
+        Assert.assertEquals(text, MessageService.getMessageByID(1).getMessage_text());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
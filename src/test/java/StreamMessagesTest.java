@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class StreamMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?stream=true
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the same JSON list of messages as the buffered endpoint
+     */
+    @Test
+    public void streamAllMessagesJsonList() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages?stream=true", "application/json");
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages accepting application/x-ndjson
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one JSON message per line
+     */
+    @Test
+    public void streamAllMessagesForUserNdjson() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/accounts/1/messages", "application/x-ndjson");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/x-ndjson", response.headers().firstValue("Content-Type").orElse(""));
+
+        String[] lines = response.body().split("\n");
+        Assert.assertEquals(1, lines.length);
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792),
+                objectMapper.readValue(lines[0], Message.class));
+    }
+
+    /**
+     * Streaming an account with no messages should still produce a valid, empty JSON list.
+     */
+    @Test
+    public void streamAllMessagesForUserNoMessages() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/accounts/2/messages?stream=true", "application/json");
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertTrue(messages.isEmpty());
+    }
+
+    /**
+     * A stream whose query fails should not be answered as a normal, complete list.
+     */
+    @Test
+    public void failedReadIsNotAnsweredAsList() throws IOException, InterruptedException, SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute("drop table message");
+        } finally {
+            ConnectionUtil.close(statement, connection);
+        }
+        HttpResponse<String> response = get("/messages?stream=true", "application/json");
+        Assert.assertEquals(500, response.statusCode());
+    }
+
+    /**
+     * The large fetch size used to stream should not stay on the cached statement for later queries.
+     */
+    @Test
+    public void streamingLeavesNoFetchSizeBehind() throws IOException, SQLException {
+        new MessageDAO().streamAllMessages(message -> { });
+        //the pool hands back the connection just returned, with its statement cache
+        Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement cached = connection.prepareStatement(MessageDAO.SELECT_ALL_MESSAGES);
+        PreparedStatement fresh = connection.prepareStatement(MessageDAO.SELECT_ALL_MESSAGES + " where 1 = 1");
+        try {
+            Assert.assertEquals(fresh.getFetchSize(), cached.getFetchSize());
+        } finally {
+            ConnectionUtil.close(fresh, cached, connection);
+        }
+    }
+
+    private HttpResponse<String> get(String path, String accept) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .header("Accept", accept)
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}